@@ -0,0 +1,207 @@
+/*
+ * #%L
+ * Wisdom-Framework
+ * %%
+ * Copyright (C) 2015 Wisdom Framework
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.wisdom.jongo.bridge;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.wisdom.api.model.EntityFilter;
+import org.wisdom.jongo.service.AsyncJongoCRUD;
+import org.wisdom.jongo.service.BatchResult;
+import org.wisdom.jongo.service.JongoCRUD;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Implementation of {@link AsyncJongoCRUD} delegating to a {@link JongoCRUD} on a {@link CrudExecutor}.
+ *
+ * @param <T> the entity class.
+ * @param <K> the type of the id.
+ */
+public class AsyncJongoCRUDService<T, K extends Serializable> implements AsyncJongoCRUD<T, K> {
+
+    private final JongoCRUD<T, K> crud;
+    private final CrudExecutor executor;
+
+    /**
+     * Creates the service.
+     *
+     * @param crud     the synchronous Crud service.
+     * @param executor the executor running the operations.
+     */
+    public AsyncJongoCRUDService(JongoCRUD<T, K> crud, CrudExecutor executor) {
+        this.crud = crud;
+        this.executor = executor;
+    }
+
+    @Override
+    public JongoCRUD<T, K> getCrud() {
+        return crud;
+    }
+
+    @Override
+    public Class<T> getEntityClass() {
+        return crud.getEntityClass();
+    }
+
+    @Override
+    public Class<K> getIdClass() {
+        return crud.getIdClass();
+    }
+
+    /**
+     * @return the executor running the operations, to monitor its queue.
+     */
+    public CrudExecutor getExecutor() {
+        return executor;
+    }
+
+    @Override
+    public ListenableFuture<T> save(final T entity) {
+        return executor.submit(new Callable<T>() {
+            @Override
+            public T call() {
+                return crud.save(entity);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<BatchResult<T>> saveAll(final Iterable<T> entities) {
+        return executor.submit(new Callable<BatchResult<T>>() {
+            @Override
+            public BatchResult<T> call() {
+                return crud.saveAll(entities);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<BatchResult<T>> upsertAll(final Iterable<T> entities, final boolean ordered,
+                                                      final String... keyFields) {
+        return executor.submit(new Callable<BatchResult<T>>() {
+            @Override
+            public BatchResult<T> call() {
+                return crud.upsertAll(entities, ordered, keyFields);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<T> findOne(final K id) {
+        return executor.submit(new Callable<T>() {
+            @Override
+            public T call() {
+                return crud.findOne(id);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<T> findOne(final EntityFilter<T> filter) {
+        return executor.submit(new Callable<T>() {
+            @Override
+            public T call() {
+                return crud.findOne(filter);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<List<T>> findAll(final Iterable<K> ids) {
+        return executor.submit(new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return Lists.newArrayList(crud.findAll(ids));
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<List<T>> findAll(final EntityFilter<T> filter) {
+        return executor.submit(new Callable<List<T>>() {
+            @Override
+            public List<T> call() throws IOException {
+                Iterable<T> entities = crud.findAll(filter);
+                try {
+                    return Lists.newArrayList(entities);
+                } finally {
+                    if (entities instanceof Closeable) {
+                        ((Closeable) entities).close();
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Boolean> exists(final K id) {
+        return executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return crud.exists(id);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Long> count() {
+        return executor.submit(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return crud.count();
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Long> count(final EntityFilter<T> filter) {
+        return executor.submit(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return crud.count(filter);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Void> delete(final K id) {
+        return executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                crud.delete(id);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Long> deleteAll(final Iterable<K> ids) {
+        return executor.submit(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return crud.deleteAll(ids);
+            }
+        });
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * #%L
+ * Wisdom-Framework
+ * %%
+ * Copyright (C) 2015 Wisdom Framework
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.wisdom.jongo.bridge;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A short-lived cache of the number of documents of a collection. Writes made through the Crud service adjust the
+ * cached count instead of discarding it, so only the writes made by other means are missed, until the count expires.
+ * <p>
+ * Counts racing with a write are not cached: each write bumps a generation number, and counts loaded under a previous
+ * generation are dropped.
+ */
+public final class CountCache {
+
+    private final long ttl;
+    private long count;
+    private long loadTime;
+    private boolean loaded;
+    private long generation;
+    private long hitCount;
+    private long loadCount;
+
+    /**
+     * Creates the cache.
+     *
+     * @param ttl  the time-to-live of the count.
+     * @param unit the unit of the time-to-live.
+     */
+    CountCache(long ttl, TimeUnit unit) {
+        this.ttl = unit.toNanos(ttl);
+    }
+
+    /**
+     * Gets the cached count.
+     *
+     * @return the count, {@code null} if not loaded or expired.
+     */
+    synchronized Long get() {
+        if (loaded && System.nanoTime() - loadTime <= ttl) {
+            hitCount++;
+            return count;
+        }
+        loadCount++;
+        return null;
+    }
+
+    /**
+     * @return the current generation, to pass to {@link #put(long, long)} once the count is loaded.
+     */
+    synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Caches a loaded count, unless a write happened while it was loaded.
+     *
+     * @param count      the count.
+     * @param generation the generation read before loading the count.
+     */
+    synchronized void put(long count, long generation) {
+        if (this.generation == generation) {
+            this.count = count;
+            this.loadTime = System.nanoTime();
+            this.loaded = true;
+        }
+    }
+
+    /**
+     * Adjusts the cached count after a write.
+     *
+     * @param delta the number of inserted documents, negative for deleted documents.
+     */
+    synchronized void adjust(long delta) {
+        generation++;
+        count += delta;
+    }
+
+    /**
+     * Discards the cached count, when the effect of a write is unknown.
+     */
+    synchronized void invalidate() {
+        generation++;
+        loaded = false;
+    }
+
+    /**
+     * @return the number of counts answered by the cache.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of counts executed by the database.
+     */
+    public synchronized long getLoadCount() {
+        return loadCount;
+    }
+}
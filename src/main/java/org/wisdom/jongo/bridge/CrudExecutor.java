@@ -0,0 +1,269 @@
+/*
+ * #%L
+ * Wisdom-Framework
+ * %%
+ * Copyright (C) 2015 Wisdom Framework
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.wisdom.jongo.bridge;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The bounded executor running the operations of the {@link AsyncJongoCRUDService} of a database. Tasks submitted
+ * while all the threads are busy and the queue is full are rejected: the returned future fails with a
+ * {@link RejectedExecutionException}. The queue and the rejections are exposed, so the back pressure is visible.
+ * <p>
+ * Two modes are supported:
+ * <ul>
+ * <li>{@link Mode#POOL}: a fixed pool of platform threads with a bounded queue.</li>
+ * <li>{@link Mode#VIRTUAL}: a virtual thread per task, on JVMs supporting them. The number of tasks running
+ * concurrently is still bounded by a semaphore, which should match the size of the driver connection pool: the
+ * driver synchronizes on its connections, and virtual threads blocked in a {@code synchronized} block pin their carrier
+ * thread. Tasks waiting for a permit are parked on the semaphore, which does not pin the carrier.</li>
+ * </ul>
+ * Before Java 24, a virtual thread also pins its carrier while it blocks on I/O inside a {@code synchronized} block,
+ * as the driver does during a round trip. The semaphore does not prevent that. The virtual mode then needs
+ * {@code -Djdk.virtualThreadScheduler.parallelism} to be at least the concurrency, otherwise its throughput is bounded
+ * by the number of cores, see {@code CrudExecutorBenchmark}.
+ */
+public final class CrudExecutor {
+
+    /**
+     * The execution modes.
+     */
+    public enum Mode {
+        POOL, VIRTUAL
+    }
+
+    private final Mode mode;
+    private final ListeningExecutorService service;
+    private final ThreadPoolExecutor pool;
+    private final Semaphore permits;
+    private final int concurrency;
+    private final int queueCapacity;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private volatile boolean stopped;
+
+    /**
+     * Creates an executor using a pool of platform threads.
+     *
+     * @param name          the name of the database, used to name the threads.
+     * @param threads       the number of threads.
+     * @param queueCapacity the maximum number of tasks waiting for a thread.
+     */
+    CrudExecutor(String name, int threads, int queueCapacity) {
+        this.mode = Mode.POOL;
+        this.concurrency = threads;
+        this.queueCapacity = queueCapacity;
+        this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity),
+                new ThreadFactoryBuilder().setNameFormat("jongo-" + name + "-%d").setDaemon(true).build());
+        this.pool.allowCoreThreadTimeOut(true);
+        this.service = MoreExecutors.listeningDecorator(pool);
+        this.permits = null;
+    }
+
+    private CrudExecutor(ExecutorService virtualThreads, int concurrency, int queueCapacity) {
+        this.mode = Mode.VIRTUAL;
+        this.concurrency = concurrency;
+        this.queueCapacity = queueCapacity;
+        this.service = MoreExecutors.listeningDecorator(virtualThreads);
+        this.pool = null;
+        this.permits = new Semaphore(concurrency);
+    }
+
+    /**
+     * Creates an executor using a virtual thread per task.
+     *
+     * @param concurrency   the maximum number of tasks running concurrently.
+     * @param queueCapacity the maximum number of tasks waiting for a permit to run.
+     * @return the executor, {@code null} if the JVM does not support virtual threads.
+     */
+    static CrudExecutor virtual(int concurrency, int queueCapacity) {
+        ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor();
+        return virtualThreads == null ? null : new CrudExecutor(virtualThreads, concurrency, queueCapacity);
+    }
+
+    /**
+     * Creates a virtual thread per task executor. The module is compiled for Java 7, so the factory method is looked
+     * up reflectively.
+     *
+     * @return the executor, {@code null} if the JVM does not support virtual threads.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Submits a task.
+     *
+     * @param task the task.
+     * @param <V>  the type of result.
+     * @return the future result, failed with a {@link RejectedExecutionException} if the queue is full.
+     */
+    <V> ListenableFuture<V> submit(Callable<V> task) {
+        if (mode == Mode.VIRTUAL) {
+            return submitToVirtualThread(task);
+        }
+        try {
+            return service.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    private <V> ListenableFuture<V> submitToVirtualThread(final Callable<V> task) {
+        if (pending.incrementAndGet() > concurrency + queueCapacity) {
+            pending.decrementAndGet();
+            rejectedCount.incrementAndGet();
+            return Futures.immediateFailedFuture(new RejectedExecutionException("Too many pending Jongo operations ("
+                    + (concurrency + queueCapacity) + ")"));
+        }
+        try {
+            return service.submit(new Callable<V>() {
+                @Override
+                public V call() throws Exception {
+                    try {
+                        permits.acquire();
+                    } catch (InterruptedException e) {
+                        pending.decrementAndGet();
+                        if (stopped) {
+                            throw shutdownRejection(e);
+                        }
+                        throw e;
+                    }
+                    if (stopped) {
+                        // Got the permit after the shutdown, do not start the task
+                        permits.release();
+                        pending.decrementAndGet();
+                        throw shutdownRejection(null);
+                    }
+                    try {
+                        return task.call();
+                    } finally {
+                        permits.release();
+                        pending.decrementAndGet();
+                        completedCount.incrementAndGet();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            rejectedCount.incrementAndGet();
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    private static RejectedExecutionException shutdownRejection(InterruptedException cause) {
+        RejectedExecutionException rejection = new RejectedExecutionException("The Jongo executor has been shut "
+                + "down");
+        if (cause != null) {
+            rejection.initCause(cause);
+        }
+        return rejection;
+    }
+
+    /**
+     * Stops the threads, the queued tasks are not executed. Their futures are cancelled, and in virtual mode, the
+     * futures of the tasks waiting for a permit fail with a {@link RejectedExecutionException}, so callers waiting
+     * on them are released.
+     */
+    void shutdown() {
+        stopped = true;
+        List<Runnable> queued = service.shutdownNow();
+        for (Runnable task : queued) {
+            if (task instanceof Future) {
+                ((Future<?>) task).cancel(false);
+            }
+        }
+    }
+
+    /**
+     * @return the execution mode.
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return the number of tasks waiting for a thread, or for a permit in virtual mode.
+     */
+    public int getQueueSize() {
+        if (pool != null) {
+            return pool.getQueue().size();
+        }
+        return Math.max(0, pending.get() - getActiveCount());
+    }
+
+    /**
+     * @return the maximum number of tasks waiting for a thread, or for a permit in virtual mode.
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @return the number of tasks being executed.
+     */
+    public int getActiveCount() {
+        if (pool != null) {
+            return pool.getActiveCount();
+        }
+        return concurrency - permits.availablePermits();
+    }
+
+    /**
+     * @return the number of executed tasks.
+     */
+    public long getCompletedTaskCount() {
+        if (pool != null) {
+            return pool.getCompletedTaskCount();
+        }
+        return completedCount.get();
+    }
+
+    /**
+     * @return the number of tasks rejected because the queue was full.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * #%L
+ * Wisdom-Framework
+ * %%
+ * Copyright (C) 2015 Wisdom Framework
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.wisdom.jongo.bridge;
+
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cursor settings of a {@link org.wisdom.jongo.service.QueryOptions}, with the sort and hint already parsed.
+ */
+final class CursorOptions {
+
+    /**
+     * The options leaving the cursors untouched.
+     */
+    static final CursorOptions NONE = new CursorOptions(0, 0, 0, null, null, 0);
+
+    private final int batchSize;
+    private final int limit;
+    private final int skip;
+    private final DBObject sort;
+    private final DBObject hint;
+    private final long maxTimeMillis;
+
+    CursorOptions(int batchSize, int limit, int skip, DBObject sort, DBObject hint, long maxTimeMillis) {
+        this.batchSize = batchSize;
+        this.limit = limit;
+        this.skip = skip;
+        this.sort = sort;
+        this.hint = hint;
+        this.maxTimeMillis = maxTimeMillis;
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Applies the settings to a cursor, before its first use.
+     *
+     * @param cursor the cursor.
+     * @return the cursor.
+     */
+    DBCursor applyTo(DBCursor cursor) {
+        if (batchSize > 0) {
+            cursor.batchSize(batchSize);
+        }
+        if (limit > 0) {
+            cursor.limit(limit);
+        }
+        if (skip > 0) {
+            cursor.skip(skip);
+        }
+        if (sort != null) {
+            cursor.sort(sort);
+        }
+        if (hint != null) {
+            cursor.hint(hint);
+        }
+        if (maxTimeMillis > 0) {
+            cursor.maxTime(maxTimeMillis, TimeUnit.MILLISECONDS);
+        }
+        return cursor;
+    }
+}
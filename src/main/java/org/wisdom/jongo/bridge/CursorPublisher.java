@@ -0,0 +1,216 @@
+/*
+ * #%L
+ * Wisdom-Framework
+ * %%
+ * Copyright (C) 2015 Wisdom Framework
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.wisdom.jongo.bridge;
+
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import org.jongo.Mapper;
+import org.jongo.bson.Bson;
+import org.jongo.bson.BsonDBDecoder;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.wisdom.api.model.EntityFilter;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A publisher of the entities matching a query. Each subscription runs the query once the subscriber requests its
+ * first entities, and only pulls documents from the cursor as the subscriber demand arrives: the next batch is
+ * fetched from the server once the subscriber has requested more entities than the current batch holds. Cancelling
+ * the subscription closes the cursor.
+ * <p>
+ * Entities are emitted by a drain loop running on the given executor, one loop at a time per subscription, so
+ * {@link Subscription#request(long)} can be called from {@code onNext} without recursion.
+ *
+ * @param <T> the class the documents are mapped to.
+ */
+class CursorPublisher<T> implements Publisher<T> {
+
+    private final DBCollection collection;
+    private final DBObject query;
+    private final DBObject projection;
+    private final int batchSize;
+    private final CursorOptions options;
+    private final Mapper mapper;
+    private final Class<T> entityClass;
+    private final EntityFilter<T> filter;
+    private final Executor executor;
+
+    /**
+     * Creates the publisher.
+     *
+     * @param collection  the collection.
+     * @param query       the query.
+     * @param projection  the projection, {@code null} to retrieve all the fields.
+     * @param batchSize   the number of documents per cursor batch.
+     * @param options     the cursor options, overriding the batch size if they set one.
+     * @param mapper      the mapper used to unmarshall the documents.
+     * @param entityClass the class the documents are mapped to.
+     * @param filter      the filter applied to the entities, {@code null} to emit all of them.
+     * @param executor    the executor running the drain loops.
+     */
+    CursorPublisher(DBCollection collection, DBObject query, DBObject projection, int batchSize,
+                    CursorOptions options, Mapper mapper, Class<T> entityClass, EntityFilter<T> filter,
+                    Executor executor) {
+        this.collection = collection;
+        this.query = query;
+        this.projection = projection;
+        this.batchSize = batchSize;
+        this.options = options;
+        this.mapper = mapper;
+        this.entityClass = entityClass;
+        this.filter = filter;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("The subscriber must not be null");
+        }
+        subscriber.onSubscribe(new CursorSubscription(subscriber));
+    }
+
+    private final class CursorSubscription implements Subscription, Runnable {
+
+        private final Subscriber<? super T> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger pendingDrains = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+
+        // Only accessed by the drain loop
+        private DBCursor cursor;
+        private boolean done;
+
+        private CursorSubscription(Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("The number of requested entities must be strictly "
+                        + "positive, " + n + " given");
+                cancelled = true;
+            } else {
+                long current;
+                long next;
+                do {
+                    current = requested.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!requested.compareAndSet(current, next));
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (pendingDrains.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                drain();
+                missed = pendingDrains.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            if (done) {
+                return;
+            }
+            try {
+                long demand = requested.get();
+                long emitted = 0;
+                while (emitted != demand) {
+                    if (cancelled) {
+                        stop(invalidRequest);
+                        return;
+                    }
+                    if (cursor == null) {
+                        cursor = options.applyTo(collection.find(query, projection).batchSize(batchSize)
+                                .setDecoderFactory(BsonDBDecoder.FACTORY));
+                    }
+                    if (!cursor.hasNext()) {
+                        done = true;
+                        cursor.close();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    T entity = mapper.getUnmarshaller().unmarshall(Bson.createDocument(cursor.next()), entityClass);
+                    if (filter == null || filter.accept(entity)) {
+                        subscriber.onNext(entity);
+                        emitted++;
+                    }
+                }
+                if (cancelled) {
+                    stop(invalidRequest);
+                } else if (demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+            } catch (Throwable e) {
+                // the cursor is released and the subscriber notified whatever the failure
+                stop(e);
+                if (isFatal(e)) {
+                    throw (Error) e;
+                }
+            }
+        }
+
+        /**
+         * Checks whether an error must be propagated to the thread running the drain loop once the subscriber has
+         * been notified.
+         *
+         * @param error the error.
+         * @return {@code true} for the errors the JVM cannot recover from.
+         */
+        private boolean isFatal(Throwable error) {
+            return error instanceof VirtualMachineError || error instanceof ThreadDeath
+                    || error instanceof LinkageError;
+        }
+
+        private void stop(Throwable error) {
+            done = true;
+            try {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            } finally {
+                if (error != null) {
+                    subscriber.onError(error);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * #%L
+ * Wisdom-Framework
+ * %%
+ * Copyright (C) 2015 Wisdom Framework
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.wisdom.jongo.bridge;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import org.bson.BSONObject;
+import org.bson.types.Binary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the documents of the entities loaded by a Crud service, so saving them only writes the modified fields.
+ * <p>
+ * Entities are compared by identity and weakly referenced: the snapshot of an entity is dropped once the entity is
+ * garbage collected. Fields are compared at the top level of the document: a change in a nested object sets the whole
+ * field.
+ */
+final class DirtyTracker {
+
+    private static final String ID = "_id";
+
+    private final Cache<Object, DBObject> snapshots = CacheBuilder.newBuilder().weakKeys().build();
+
+    /**
+     * Records the current state of an entity.
+     *
+     * @param entity   the entity.
+     * @param document the document of the entity, as marshalled by the mapper.
+     */
+    void track(Object entity, DBObject document) {
+        snapshots.put(entity, (DBObject) copy(document));
+    }
+
+    /**
+     * Gets the last recorded state of an entity.
+     *
+     * @param entity the entity.
+     * @return the document, {@code null} if the entity is not tracked.
+     */
+    DBObject snapshotOf(Object entity) {
+        return snapshots.getIfPresent(entity);
+    }
+
+    /**
+     * Computes the update turning a document into another one.
+     *
+     * @param before the snapshot of the entity.
+     * @param after  the current document of the entity.
+     * @return the update, using {@code $set} and {@code $unset}, empty if the documents are equal.
+     */
+    static DBObject diff(DBObject before, DBObject after) {
+        BasicDBObject set = new BasicDBObject();
+        BasicDBObject unset = new BasicDBObject();
+        for (String key : after.keySet()) {
+            if (ID.equals(key)) {
+                continue;
+            }
+            Object value = copy(after.get(key));
+            if (!before.containsField(key) || !equal(before.get(key), value)) {
+                set.put(key, value);
+            }
+        }
+        for (String key : before.keySet()) {
+            if (!after.containsField(key)) {
+                unset.put(key, "");
+            }
+        }
+        BasicDBObject update = new BasicDBObject();
+        if (!set.isEmpty()) {
+            update.put("$set", set);
+        }
+        if (!unset.isEmpty()) {
+            update.put("$unset", unset);
+        }
+        return update;
+    }
+
+    /**
+     * Compares two BSON values. Binaries are compared by content, as arrays do not override {@code equals}. Objects
+     * and lists are compared recursively, as they may contain binaries.
+     *
+     * @param a the first value.
+     * @param b the second value.
+     * @return {@code true} if the values are equal.
+     */
+    private static boolean equal(Object a, Object b) {
+        if (a instanceof byte[] && b instanceof byte[]) {
+            return Arrays.equals((byte[]) a, (byte[]) b);
+        }
+        if (a instanceof Binary && b instanceof Binary) {
+            Binary x = (Binary) a;
+            Binary y = (Binary) b;
+            return x.getType() == y.getType() && Arrays.equals(x.getData(), y.getData());
+        }
+        if (a instanceof List && b instanceof List) {
+            List<?> x = (List<?>) a;
+            List<?> y = (List<?>) b;
+            if (x.size() != y.size()) {
+                return false;
+            }
+            for (int i = 0; i < x.size(); i++) {
+                if (!equal(x.get(i), y.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (a instanceof BSONObject && b instanceof BSONObject) {
+            BSONObject x = (BSONObject) a;
+            BSONObject y = (BSONObject) b;
+            // the order of the fields is significant in a document
+            if (!new ArrayList<>(x.keySet()).equals(new ArrayList<>(y.keySet()))) {
+                return false;
+            }
+            for (String key : x.keySet()) {
+                if (!equal(x.get(key), y.get(key))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Copies a BSON value into basic objects and lists, which are compared by value. The documents produced by the
+     * mapper may be lazy, and only equal to documents having the same encoding.
+     *
+     * @param value the value.
+     * @return the copy.
+     */
+    private static Object copy(Object value) {
+        if (value instanceof List) {
+            BasicDBList list = new BasicDBList();
+            for (Object item : (List<?>) value) {
+                list.add(copy(item));
+            }
+            return list;
+        }
+        if (value instanceof BSONObject) {
+            BSONObject object = (BSONObject) value;
+            BasicDBObject copy = new BasicDBObject();
+            for (String key : object.keySet()) {
+                copy.put(key, copy(object.get(key)));
+            }
+            return copy;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * #%L
+ * Wisdom-Framework
+ * %%
+ * Copyright (C) 2015 Wisdom Framework
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.wisdom.jongo.bridge;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.mongodb.DBObject;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A read-through cache of the documents retrieved by id. The documents (and not the entities) are cached, so callers
+ * modifying the returned entities do not alter the cache. Entries are evicted when the cache is full, once their
+ * time-to-live has expired, and when the Crud service writes or deletes the document.
+ * <p>
+ * Loads racing with an invalidation are not cached: each invalidation bumps a generation number, and documents
+ * loaded under a previous generation are dropped.
+ */
+public final class EntityCache {
+
+    private final Cache<Object, DBObject> documents;
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong totalLoadTime = new AtomicLong();
+
+    /**
+     * Creates the cache.
+     *
+     * @param maximumSize the maximum number of documents.
+     * @param ttl         the time-to-live of the documents, 0 to keep them until evicted or invalidated.
+     * @param unit        the unit of the time-to-live.
+     */
+    EntityCache(long maximumSize, long ttl, TimeUnit unit) {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats();
+        if (ttl > 0) {
+            builder.expireAfterWrite(ttl, unit);
+        }
+        documents = builder.build();
+    }
+
+    /**
+     * @return the current generation, to pass to {@link #put(Object, DBObject, long)} once the document is loaded.
+     */
+    long generation() {
+        return generation.get();
+    }
+
+    DBObject get(Object key) {
+        return documents.getIfPresent(key);
+    }
+
+    /**
+     * Caches a loaded document, unless an invalidation happened while it was loaded.
+     *
+     * @param key        the normalized id.
+     * @param document   the document.
+     * @param generation the generation read before loading the document.
+     */
+    void put(Object key, DBObject document, long generation) {
+        documents.put(key, document);
+        if (this.generation.get() != generation) {
+            documents.invalidate(key);
+        }
+    }
+
+    /**
+     * Records the time spent loading documents that were not cached.
+     *
+     * @param count the number of looked up ids.
+     * @param nanos the load time in nanoseconds.
+     */
+    void recordLoad(int count, long nanos) {
+        loadCount.addAndGet(count);
+        totalLoadTime.addAndGet(nanos);
+    }
+
+    void invalidate(Object key) {
+        generation.incrementAndGet();
+        documents.invalidate(key);
+    }
+
+    void invalidateAll() {
+        generation.incrementAndGet();
+        documents.invalidateAll();
+    }
+
+    /**
+     * @return the hit, miss and eviction counters.
+     */
+    public CacheStats getStats() {
+        return documents.stats();
+    }
+
+    /**
+     * @return the ratio of lookups answered by the cache, 1.0 if there was no lookup.
+     */
+    public double getHitRate() {
+        return getStats().hitRate();
+    }
+
+    /**
+     * @return the number of entries evicted because the cache was full or their time-to-live expired.
+     */
+    public long getEvictionCount() {
+        return getStats().evictionCount();
+    }
+
+    /**
+     * @return the number of ids looked up in the database because they were not cached.
+     */
+    public long getLoadCount() {
+        return loadCount.get();
+    }
+
+    /**
+     * @param unit the unit of the result.
+     * @return the total time spent looking up ids in the database.
+     */
+    public long getTotalLoadTime(TimeUnit unit) {
+        return unit.convert(totalLoadTime.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the number of cached documents.
+     */
+    public long size() {
+        return documents.size();
+    }
+}
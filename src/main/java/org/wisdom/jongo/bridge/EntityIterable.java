@@ -0,0 +1,148 @@
+/*
+ * #%L
+ * Wisdom-Framework
+ * %%
+ * Copyright (C) 2015 Wisdom Framework
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.wisdom.jongo.bridge;
+
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import org.jongo.Mapper;
+import org.jongo.bson.Bson;
+import org.jongo.bson.BsonDBDecoder;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A lazy iterable over the entities matching a query. Each iterator runs the query, unmarshalls the documents as
+ * the iteration progresses and closes its cursor once exhausted. Callers stopping the iteration early should
+ * {@link #close()} the iterable to release the server cursors.
+ *
+ * @param <T> the class the documents are mapped to, the entity class or a class declaring a subset of its fields.
+ */
+class EntityIterable<T> implements Iterable<T>, Closeable {
+
+    private final DBCollection collection;
+    private final DBObject query;
+    private final DBObject projection;
+    private final CursorOptions options;
+    private final Mapper mapper;
+    private final Class<T> entityClass;
+
+    private final Set<DBCursor> cursors = Collections.newSetFromMap(new ConcurrentHashMap<DBCursor, Boolean>());
+
+    private final AtomicReference<DBCursor> opened = new AtomicReference<>();
+    private final List<DBObject> prefetched;
+
+    EntityIterable(DBCollection collection, DBObject query, DBObject projection, Mapper mapper,
+                   Class<T> entityClass) {
+        this(collection, query, projection, CursorOptions.NONE, mapper, entityClass);
+    }
+
+    EntityIterable(DBCollection collection, DBObject query, DBObject projection, CursorOptions options,
+                   Mapper mapper, Class<T> entityClass) {
+        this(collection, query, projection, options, mapper, entityClass, Collections.<DBObject>emptyList(), null);
+    }
+
+    /**
+     * Creates an iterable whose first iterator continues a query already started: it returns the documents already
+     * read, then the documents of the opened cursor. The next iterators run the query again.
+     *
+     * @param collection  the collection.
+     * @param query       the query.
+     * @param projection  the projection, {@code null} to retrieve all the fields.
+     * @param options     the cursor options.
+     * @param mapper      the mapper used to unmarshall the documents.
+     * @param entityClass the class the documents are mapped to.
+     * @param prefetched  the documents already read from the cursor.
+     * @param cursor      the opened cursor, {@code null} if none.
+     */
+    EntityIterable(DBCollection collection, DBObject query, DBObject projection, CursorOptions options,
+                   Mapper mapper, Class<T> entityClass, List<DBObject> prefetched, DBCursor cursor) {
+        this.opened.set(cursor);
+        this.prefetched = prefetched;
+        this.collection = collection;
+        this.query = query;
+        this.projection = projection;
+        this.options = options;
+        this.mapper = mapper;
+        this.entityClass = entityClass;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        final DBCursor cursor;
+        final Iterator<DBObject> head;
+        DBCursor started = opened.getAndSet(null);
+        if (started != null) {
+            cursor = started;
+            head = prefetched.iterator();
+        } else {
+            cursor = options.applyTo(collection.find(query, projection).setDecoderFactory(BsonDBDecoder.FACTORY));
+            head = Collections.emptyIterator();
+        }
+        cursors.add(cursor);
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                if (cursors.contains(cursor) && (head.hasNext() || cursor.hasNext())) {
+                    return true;
+                }
+                close(cursor);
+                return false;
+            }
+
+            @Override
+            public T next() {
+                DBObject document = head.hasNext() ? head.next() : cursor.next();
+                return mapper.getUnmarshaller().unmarshall(Bson.createDocument(document), entityClass);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Cannot remove an entity from a query result");
+            }
+        };
+    }
+
+    /**
+     * Closes the cursors still opened by the iterators.
+     */
+    @Override
+    public void close() {
+        DBCursor started = opened.getAndSet(null);
+        if (started != null) {
+            started.close();
+        }
+        for (DBCursor cursor : cursors) {
+            close(cursor);
+        }
+    }
+
+    private void close(DBCursor cursor) {
+        if (cursors.remove(cursor)) {
+            cursor.close();
+        }
+    }
+}
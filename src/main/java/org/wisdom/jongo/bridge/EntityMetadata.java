@@ -0,0 +1,264 @@
+/*
+ * #%L
+ * Wisdom-Framework
+ * %%
+ * Copyright (C) 2015 Wisdom Framework
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.wisdom.jongo.bridge;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Iterables;
+import org.apache.commons.lang3.ClassUtils;
+import org.bson.types.ObjectId;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The metadata of an entity class: its id field, the kind of id, the accessor of the id, the class hierarchy used
+ * to register the Crud service and the 'copy' constructors used to save sub-class instances. Metadata are computed
+ * once per class and shared by all Crud services and repositories. They must be evicted when the bundle providing
+ * the class goes away, or when the repository stops.
+ */
+final class EntityMetadata {
+
+    //constant name of the field in the entity to be used for id
+    private static final String ID = "_id";
+
+    private static final ConcurrentMap<Class<?>, EntityMetadata> REGISTRY = new ConcurrentHashMap<>();
+
+    private final Class<?> entityClass;
+    private final Field idField;
+    private final Class idFieldType;
+    private final IdAccessor idAccessor;
+    private volatile Class[] hierarchy;
+    /**
+     * The 'copy' constructors, per source class. Keys are weak so the metadata does not retain the classes of
+     * uninstalled bundles. Values are soft as the constructor handle references the source class: a strong value
+     * would keep its own key reachable.
+     */
+    private final LoadingCache<Class<?>, CopyConstructor> copyConstructors;
+
+    private EntityMetadata(Class<?> entityClass) {
+        this.entityClass = entityClass;
+        this.idField = findIdField(entityClass);
+        this.idFieldType = getIdType(idField);
+        this.idAccessor = IdAccessor.of(idField);
+        this.copyConstructors = CacheBuilder.newBuilder().weakKeys().softValues()
+                .build(new CacheLoader<Class<?>, CopyConstructor>() {
+                    @Override
+                    public CopyConstructor load(Class<?> source) {
+                        return CopyConstructor.lookup(EntityMetadata.this.entityClass, source);
+                    }
+                });
+    }
+
+    /**
+     * Gets the metadata of the given class, computing them if not already done.
+     *
+     * @param entityClass the entity class.
+     * @return the metadata.
+     * @throws IllegalStateException if the class does not have an id field.
+     */
+    static EntityMetadata of(Class<?> entityClass) {
+        EntityMetadata metadata = REGISTRY.get(entityClass);
+        if (metadata == null) {
+            metadata = new EntityMetadata(entityClass);
+            EntityMetadata existing = REGISTRY.putIfAbsent(entityClass, metadata);
+            if (existing != null) {
+                metadata = existing;
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * Evicts the metadata of the given class, so the class (and its class loader) is not retained.
+     *
+     * @param entityClass the entity class.
+     */
+    static void evict(Class<?> entityClass) {
+        REGISTRY.remove(entityClass);
+    }
+
+    Field getIdField() {
+        return idField;
+    }
+
+    /**
+     * @return the kind of id: {@link ObjectId} for the ids generated by the database (whatever the type of the
+     * field), or the type of the field.
+     */
+    Class getIdFieldType() {
+        return idFieldType;
+    }
+
+    IdAccessor getIdAccessor() {
+        return idAccessor;
+    }
+
+    /**
+     * @return the class, its super-classes and the implemented interfaces.
+     */
+    Class[] getHierarchy() {
+        if (hierarchy == null) {
+            hierarchy = Iterables.toArray(ClassUtils.hierarchy(entityClass, ClassUtils.Interfaces.INCLUDE),
+                    Class.class);
+        }
+        return hierarchy.clone();
+    }
+
+    /**
+     * Gets the 'copy' constructor of the entity class accepting an instance of the given class. Lookups, including
+     * unsuccessful ones, are cached.
+     *
+     * @param source the class of the object to copy.
+     * @return the constructor.
+     */
+    CopyConstructor getCopyConstructor(Class<?> source) {
+        // The lookup never throws, failures are cached as constructors without handle
+        return copyConstructors.getUnchecked(source);
+    }
+
+    /**
+     * Check the fields in the entity class and parent class to find the correct id field.
+     *
+     * @return returns the field that has the correct annotations.
+     */
+    private static Field findIdField(Class<?> entityClass) {
+        //check all declared fields first
+        for (Field field : entityClass.getDeclaredFields()) {
+            if (getIdType(field) != null) {
+                return field;
+            }
+        }
+        //If not found above check in the parent classes
+        for (Field field : entityClass.getFields()) {
+            if (getIdType(field) != null) {
+                return field;
+            }
+        }
+
+        throw new IllegalStateException(
+                "Cannot find the id field inside " + entityClass.getName());
+    }
+
+    /**
+     * Check the field to see if it has the annotations we are looking for.
+     *
+     * @param field from an entity.
+     * @return the kind of id if it has the correct annotations otherwise returns null. Assumes that there isn't
+     * more than one field with correct annotations.
+     */
+    private static Class getIdType(Field field) {
+        Class type = field.getType();
+        String name = field.getName();
+
+        org.jongo.marshall.jackson.oid.ObjectId objectId =
+                field.getAnnotation(org.jongo.marshall.jackson.oid.ObjectId.class);
+        org.jongo.marshall.jackson.oid.Id id =
+                field.getAnnotation(org.jongo.marshall.jackson.oid.Id.class);
+
+        if (ID.equals(name) && objectId != null
+                || id != null && objectId != null) {
+            return ObjectId.class;
+        }
+        if (hasAnnotation(field, org.jongo.marshall.jackson.oid.Id.class)
+                || type.equals(ObjectId.class)) {  // objectId is null
+            return type;
+        }
+        if (id == null && objectId == null && ID.equals(name)) {
+            return type;
+        }
+
+        return null;
+    }
+
+    /**
+     * Check if the filed is annotated.
+     *
+     * @param field      field from current class or parent class.
+     * @param annotation the annotation we are searching for.
+     * @return true if found false if not.
+     */
+    private static boolean hasAnnotation(Field field, Class annotation) {
+        for (Annotation ann : field.getAnnotations()) {
+            if (ann.annotationType().getName().equals(annotation.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A constructor of the entity class accepting a single instance of another class, or the reason why there is
+     * none.
+     */
+    static final class CopyConstructor {
+
+        private static final MethodType TYPE = MethodType.methodType(Object.class, Object.class);
+
+        private final MethodHandle handle;
+        private final String error;
+
+        private CopyConstructor(MethodHandle handle, String error) {
+            this.handle = handle;
+            this.error = error;
+        }
+
+        private static CopyConstructor lookup(Class<?> entityClass, Class<?> source) {
+            try {
+                Constructor<?> constructor = entityClass.getConstructor(source);
+                constructor.setAccessible(true);
+                return new CopyConstructor(MethodHandles.lookup().unreflectConstructor(constructor).asType(TYPE),
+                        null);
+            } catch (NoSuchMethodException e) {
+                return new CopyConstructor(null, "incompatible type and no 'copy' constructor. The class "
+                        + entityClass.getName() + " requires a constructor accepting a " + source.getName()
+                        + " has unique parameter.");
+            } catch (IllegalAccessException e) {
+                return new CopyConstructor(null, "unaccessible constructor");
+            }
+        }
+
+        /**
+         * Creates an instance of the entity class from the given object.
+         *
+         * @param source the object to copy.
+         * @return the new instance.
+         * @throws RuntimeException if there is no suitable constructor, or the constructor has thrown an exception.
+         */
+        Object newInstance(Object source) {
+            if (handle == null) {
+                throw new RuntimeException("The object " + source + " cannot be saved - " + error);
+            }
+            try {
+                return (Object) handle.invokeExact(source);
+            } catch (Throwable e) {
+                throw new RuntimeException("The object " + source + " cannot be saved - the constructor has thrown "
+                        + "an exception", e);
+            }
+        }
+    }
+}
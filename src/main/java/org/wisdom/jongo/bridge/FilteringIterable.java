@@ -0,0 +1,130 @@
+/*
+ * #%L
+ * Wisdom-Framework
+ * %%
+ * Copyright (C) 2015 Wisdom Framework
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.wisdom.jongo.bridge;
+
+import org.jongo.MongoCollection;
+import org.jongo.MongoCursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.wisdom.api.model.EntityFilter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A lazy iterable evaluating an {@link EntityFilter} in the JVM. Each iterator opens its own cursor, pulls the
+ * documents by batch as the iteration progresses and closes the cursor once exhausted. Matches are never buffered,
+ * so the memory is bounded by the cursor batch size.
+ * <p>
+ * Callers stopping the iteration early should {@link #close()} the iterable to release the server cursors.
+ *
+ * @param <T> the entity class.
+ */
+class FilteringIterable<T> implements Iterable<T>, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FilteringIterable.class);
+
+    private final MongoCollection collection;
+    private final Class<T> entityClass;
+    private final EntityFilter<T> filter;
+    private final int batchSize;
+
+    private final Set<MongoCursor<T>> cursors =
+            Collections.newSetFromMap(new ConcurrentHashMap<MongoCursor<T>, Boolean>());
+
+    FilteringIterable(MongoCollection collection, Class<T> entityClass, EntityFilter<T> filter, int batchSize) {
+        this.collection = collection;
+        this.entityClass = entityClass;
+        this.filter = filter;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        MongoCursor<T> cursor = collection.find().batchSize(batchSize).as(entityClass);
+        cursors.add(cursor);
+        return new FilteringIterator(cursor);
+    }
+
+    /**
+     * Closes the cursors still opened by the iterators.
+     */
+    @Override
+    public void close() {
+        for (MongoCursor<T> cursor : cursors) {
+            close(cursor);
+        }
+    }
+
+    private void close(MongoCursor<T> cursor) {
+        if (cursors.remove(cursor)) {
+            try {
+                cursor.close();
+            } catch (IOException e) {
+                LOGGER.warn("Cannot close the cursor on {}", collection.getName(), e);
+            }
+        }
+    }
+
+    private class FilteringIterator implements Iterator<T> {
+
+        private final MongoCursor<T> cursor;
+        private T next;
+
+        private FilteringIterator(MongoCursor<T> cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (!cursors.contains(cursor) || !cursor.hasNext()) {
+                    close(cursor);
+                    return false;
+                }
+                T candidate = cursor.next();
+                if (filter.accept(candidate)) {
+                    next = candidate;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T current = next;
+            next = null;
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Cannot remove an entity from a filtered result");
+        }
+    }
+}
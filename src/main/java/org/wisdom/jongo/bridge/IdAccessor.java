@@ -0,0 +1,64 @@
+/*
+ * #%L
+ * Wisdom-Framework
+ * %%
+ * Copyright (C) 2015 Wisdom Framework
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.wisdom.jongo.bridge;
+
+import java.lang.reflect.Field;
+
+/**
+ * Reads the id field of an entity. The field is resolved and made accessible once per entity class, so the
+ * accessibility checks are not paid on every access, and access failures are reported instead of being swallowed.
+ */
+final class IdAccessor {
+
+    private final Field field;
+
+    private IdAccessor(Field field) {
+        this.field = field;
+    }
+
+    /**
+     * Creates the accessor of the given field.
+     *
+     * @param field the id field.
+     * @return the accessor.
+     * @throws IllegalStateException if the field cannot be made accessible.
+     */
+    static IdAccessor of(Field field) {
+        try {
+            field.setAccessible(true);
+        } catch (SecurityException e) {
+            throw new IllegalStateException("Cannot access the id field " + field.getName() + " of "
+                    + field.getDeclaringClass().getName(), e);
+        }
+        return new IdAccessor(field);
+    }
+
+    /**
+     * @param entity the entity.
+     * @return the value of the id field, boxed if the field is a primitive.
+     */
+    Object get(Object entity) {
+        try {
+            return field.get(entity);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot read the id field " + field.getName() + " of " + entity, e);
+        }
+    }
+}
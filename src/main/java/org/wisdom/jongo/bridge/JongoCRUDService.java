@@ -19,26 +19,64 @@
  */
 package org.wisdom.jongo.bridge;
 
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.io.BaseEncoding;
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteResult;
+import com.mongodb.BulkWriteUpsert;
 import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
 import com.mongodb.WriteResult;
+import org.bson.BSONObject;
+import org.bson.BasicBSONDecoder;
+import org.bson.BasicBSONEncoder;
+import org.bson.types.BSONTimestamp;
+import org.bson.types.Binary;
 import org.bson.types.ObjectId;
+import org.bson.types.Symbol;
 
 import org.jongo.Jongo;
+import org.jongo.Mapper;
 import org.jongo.MongoCollection;
+import org.jongo.ObjectIdUpdater;
+import org.jongo.bson.Bson;
+import org.jongo.bson.BsonDBDecoder;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.wisdom.api.model.*;
+import org.wisdom.jongo.service.BatchResult;
 import org.wisdom.jongo.service.JongoCRUD;
 import org.wisdom.jongo.service.MongoFilter;
+import org.wisdom.jongo.service.Page;
+import org.wisdom.jongo.service.QueryFilter;
+import org.wisdom.jongo.service.QueryOptions;
 
 import java.io.Serializable;
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
-
-import static org.jongo.Oid.withOid;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
 /**
  * Jongo Crud service for the Wisdom-Framework. Extends the provided crud service.
@@ -60,13 +98,58 @@ public class JongoCRUDService<T, K extends Serializable> implements JongoCRUD<T,
     private final Class<T> entityClass;
     private final Class<K> entityKeyClass;
     private final MongoCollection collection;
+    private final Mapper mapper;
+    private final EntityMetadata metadata;
     private final Field idField;
+    private final IdAccessor idAccessor;
     private Class idFieldType;
     private JongoRepository repository;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private volatile ForkJoinPool filterPool;
+    private final QueryTemplateCache queryTemplates = QueryTemplateCache.shared();
+    private volatile EntityCache entityCache;
+    private final AtomicLong collectionVersion;
+    private volatile QueryResultCache queryCache;
+    private volatile MissingIdCache missingIds;
+    private volatile CountCache countCache;
+    private volatile DirtyTracker dirtyTracker;
+    private Executor publisherExecutor = CALLER_THREAD;
+    private volatile double bloomFilterFpp;
+    private volatile long bloomFilterTtl;
+    private volatile Executor bloomFilterExecutor;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JongoCRUDService.class);
 
     //constant name of the field in the entity to be used for id
     private static final String ID = "_id";
 
+    //projection retrieving only the id of the documents
+    private static final DBObject ID_PROJECTION = new BasicDBObject(ID, 1);
+
+    /**
+     * The default number of documents sent to the database in a single bulk write.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    //runs the drain loops of the publishers on the thread requesting the entities
+    private static final Executor CALLER_THREAD = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    //failure reported for the entities of an ordered bulk write following a failure
+    private static final String NOT_EXECUTED = "Not executed, a previous write failed";
+
+    //BSON type of the null values, matched with {field : null} to also select the missing fields
+    private static final int NULL_TYPE = 10;
+
+    //BSON types of the values, grouped and ordered as MongoDB sorts them
+    private static final int[][] TYPE_BRACKETS = {
+            {NULL_TYPE}, {1, 16, 18}, {2, 14}, {3}, {5}, {7}, {8}, {9}, {17}, {11}
+    };
+
     /**
      * Constructor
      *
@@ -77,8 +160,13 @@ public class JongoCRUDService<T, K extends Serializable> implements JongoCRUD<T,
         this.entityClass = clazz;
         Jongo jongo = new Jongo(db);
         collection = jongo.getCollection(entityClass.getSimpleName());
-        this.idField = findIdField();
+        mapper = jongo.getMapper();
+        this.metadata = EntityMetadata.of(entityClass);
+        this.idField = metadata.getIdField();
+        this.idFieldType = metadata.getIdFieldType();
+        this.idAccessor = metadata.getIdAccessor();
         entityKeyClass = (Class<K>) this.idField.getType();
+        collectionVersion = QueryResultCache.collectionVersion(db.getName(), collection.getName());
     }
 
     /**
@@ -100,99 +188,246 @@ public class JongoCRUDService<T, K extends Serializable> implements JongoCRUD<T,
     }
 
     /**
-     * Get the value of the id field from an entity.
-     * @param o the entity who's field we wish to access.
-     * @return the value from the field.
+     * Sets the number of documents sent to the database in a single bulk write.
+     *
+     * @param batchSize the chunk size, must be strictly positive.
      */
-    private K getEntityId(T o) {
-        try {
-            if (!idField.isAccessible()) {
-                idField.setAccessible(true);
-            }
-            return (K) idField.get(o);
-        } catch (IllegalAccessException e) {
-            // TODO LOGGER HERE
-            return null;
+    public void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be strictly positive, " + batchSize + " given");
         }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Sets the pool used to evaluate entity filters in parallel, required by
+     * {@link #findAllInParallel(EntityFilter, boolean)}. The pool is owned by the caller, which shuts it down.
+     *
+     * @param filterPool the pool.
+     */
+    public void setFilterPool(ForkJoinPool filterPool) {
+        this.filterPool = filterPool;
+    }
+
+    /**
+     * Enables the read-through cache used by {@link #findOne(Serializable)} and {@link #findAll(Iterable)}. Writes
+     * and deletions made through this service evict the modified documents, but modifications made by other means
+     * are only visible once the entries expire.
+     *
+     * @param maximumSize the maximum number of cached documents.
+     * @param ttl         the time-to-live of the cached documents, 0 to keep them until evicted.
+     * @param unit        the unit of the time-to-live.
+     */
+    public void enableCache(long maximumSize, long ttl, TimeUnit unit) {
+        this.entityCache = new EntityCache(maximumSize, ttl, unit);
+    }
+
+    /**
+     * Gets the entity cache, to check its effectiveness.
+     *
+     * @return the cache, {@code null} if not enabled.
+     */
+    public EntityCache getEntityCache() {
+        return entityCache;
+    }
+
+    /**
+     * Enables the cache of the results of the {@link MongoFilter} and {@link QueryFilter} given to
+     * {@link #findOne(EntityFilter)} and {@link #findAll(EntityFilter)}. Results are discarded as soon as the
+     * collection is modified through a Jongo Crud service, unless a max staleness is given: results younger than the
+     * max staleness are then returned even if the collection has been modified since.
+     *
+     * @param maximumSize   the maximum number of cached results.
+     * @param maxResultSize the maximum number of documents of a cached result, larger results are not cached.
+     * @param maxStaleness  the max staleness, 0 to never return results older than the last write.
+     * @param unit          the unit of the max staleness.
+     */
+    public void enableQueryCache(long maximumSize, int maxResultSize, long maxStaleness, TimeUnit unit) {
+        this.queryCache = new QueryResultCache(collectionVersion, maximumSize, maxResultSize, maxStaleness, unit);
+    }
+
+    /**
+     * Gets the query result cache, to check its effectiveness.
+     *
+     * @return the cache, {@code null} if not enabled.
+     */
+    public QueryResultCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Enables the negative cache used by {@link #findOne(Serializable)} and {@link #exists(Serializable)}: ids not
+     * found by a lookup are answered locally until written through this service, or until they expire.
+     *
+     * @param maximumSize the maximum number of cached missing ids.
+     * @param ttl         the time-to-live of the missing ids, 0 to keep them until evicted.
+     * @param unit        the unit of the time-to-live.
+     */
+    public void enableMissingIdCache(long maximumSize, long ttl, TimeUnit unit) {
+        this.missingIds = new MissingIdCache(maximumSize, ttl, unit);
+    }
+
+    /**
+     * Builds a Bloom filter of the ids of the collection on the calling thread, as
+     * {@link #enableMissingIdBloomFilter(double, long, TimeUnit, Executor)} without time-to-live.
+     *
+     * @param fpp the desired false positive probability.
+     */
+    public void enableMissingIdBloomFilter(double fpp) {
+        enableMissingIdBloomFilter(fpp, 0, TimeUnit.SECONDS, CALLER_THREAD);
     }
 
     /**
-     * Check the fields in the entity class and parent class to find the correct id field.
+     * Builds a Bloom filter of the ids of the collection, read from the {@code _id} index, so the negative cache also
+     * answers lookups of ids never looked up before. The filter is then updated on each write made through this
+     * service, but it does not see the writes made by other processes: it must only be enabled if this application
+     * instance is the single writer of the collection. The negative cache must be enabled first.
+     * <p>
+     * The filter is built on the given executor, lookups are answered by the database until it is ready. It is
+     * rebuilt, on the same executor, once its time-to-live expires or once the collection has grown enough to raise
+     * its false positive probability above twice the desired one.
      *
-     * @return returns the field that has the correct annotations.
+     * @param fpp      the desired false positive probability.
+     * @param ttl      the time-to-live of the filter, 0 to only rebuild it when too full.
+     * @param unit     the unit of the time-to-live.
+     * @param executor the executor building the filter.
      */
-    private Field findIdField() {
-        if (idField != null) {
-            return idField;
+    public void enableMissingIdBloomFilter(double fpp, long ttl, TimeUnit unit, Executor executor) {
+        if (missingIds == null) {
+            throw new IllegalStateException("The missing id cache of " + entityClass.getName() + " is not enabled");
         }
+        this.bloomFilterFpp = fpp;
+        this.bloomFilterTtl = unit.toMillis(ttl);
+        this.bloomFilterExecutor = executor;
+        buildMissingIdBloomFilter();
+    }
 
-        //check all declared fields first
-        for (Field field : entityClass.getDeclaredFields()) {
-            if (isEntityId(field)) {
-                return field;
-            }
+    /**
+     * Builds a new Bloom filter of the ids of the collection on the Bloom filter executor, unless a build is already
+     * in progress.
+     */
+    private void buildMissingIdBloomFilter() {
+        final MissingIdCache cache = missingIds;
+        final DBCollection dbCollection = collection.getDBCollection();
+        if (cache == null || !cache.startBloomFilter(Math.max(2 * dbCollection.count(), 1000), bloomFilterFpp,
+                bloomFilterTtl, TimeUnit.MILLISECONDS)) {
+            return;
         }
-        //If not found above check in the parent classes
-        for (Field field : entityClass.getFields()) {
-            if (isEntityId(field)) {
-                return field;
+        Runnable build = new Runnable() {
+            @Override
+            public void run() {
+                try (DBCursor cursor = dbCollection.find(new BasicDBObject(), ID_PROJECTION).hint(ID_PROJECTION)
+                        .batchSize(batchSize)) {
+                    while (cursor.hasNext()) {
+                        cache.seed(toLookupKey(cursor.next().get(ID)));
+                    }
+                    cache.bloomFilterReady();
+                } catch (RuntimeException e) {
+                    cache.bloomFilterFailed();
+                    LOGGER.warn("Cannot build the Bloom filter of the ids of {}", dbCollection.getName(), e);
+                }
             }
+        };
+        try {
+            bloomFilterExecutor.execute(build);
+        } catch (RejectedExecutionException e) {
+            cache.bloomFilterFailed();
+            LOGGER.warn("Cannot build the Bloom filter of the ids of {}", dbCollection.getName(), e);
+        }
+    }
+
+    /**
+     * Checks whether an id is known to be absent by the negative cache, starting the rebuild of its Bloom filter if
+     * it has expired.
+     *
+     * @param absent the negative cache.
+     * @param key    the normalized id.
+     * @return {@code true} if the id is known to be absent.
+     */
+    private boolean isMissing(MissingIdCache absent, Object key) {
+        if (absent.bloomFilterExpired()) {
+            buildMissingIdBloomFilter();
         }
+        return absent.isMissing(key);
+    }
 
-        throw new IllegalStateException(
-                "Cannot find the id field inside " + entityClass.getName());
+    /**
+     * Gets the negative cache, to check its effectiveness.
+     *
+     * @return the cache, {@code null} if not enabled.
+     */
+    public MissingIdCache getMissingIdCache() {
+        return missingIds;
     }
 
     /**
-     * Check each field to see if it has the annotations we are looking for.
+     * Enables the cache used by {@link #count()}. Writes and deletions made through this service adjust the cached
+     * count, but modifications made by other means are only visible once the count expires.
      *
-     * @param field from an entity.
-     * @return true if it has the correct annotations otherwise returns false. Assumes that there isn't more than
-     * one field with correct annotations.
+     * @param ttl  the time-to-live of the count.
+     * @param unit the unit of the time-to-live.
      */
-    private boolean isEntityId(Field field) {
-        Class type = field.getType();
-        String name = field.getName();
+    public void enableCountCache(long ttl, TimeUnit unit) {
+        this.countCache = new CountCache(ttl, unit);
+    }
 
-        org.jongo.marshall.jackson.oid.ObjectId objectId =
-                field.getAnnotation(org.jongo.marshall.jackson.oid.ObjectId.class);
-        org.jongo.marshall.jackson.oid.Id id =
-                field.getAnnotation(org.jongo.marshall.jackson.oid.Id.class);
+    /**
+     * Gets the count cache, to check its effectiveness.
+     *
+     * @return the cache, {@code null} if not enabled.
+     */
+    public CountCache getCountCache() {
+        return countCache;
+    }
 
-        if (ID.equals(name) && objectId != null
-                || id != null && objectId != null) {
-            setIdFieldType(ObjectId.class);
-            return true;
-        }
-        if (hasAnnotation(field, org.jongo.marshall.jackson.oid.Id.class)
-                || type.equals(ObjectId.class)) {  // objectId is null
-            setIdFieldType(type);
-            return true;
-        }
-        if (id == null && objectId == null && ID.equals(name)) {
-            setIdFieldType(type);
-            return true;
-        }
+    /**
+     * Enables or disables the dirty tracking. When enabled, the entities loaded by {@link #findOne(Serializable)},
+     * {@link #findAll(Iterable)} and {@link #findOne(EntityFilter)}, and the entities saved by {@link #save(Object)},
+     * are tracked: saving them again only writes the modified fields using {@code $set} and {@code $unset}, and
+     * nothing is written if they have not been modified. Modifications made by other writers to the other fields are
+     * preserved.
+     *
+     * @param enabled whether the dirty tracking is enabled.
+     */
+    public void setDirtyTracking(boolean enabled) {
+        this.dirtyTracker = enabled ? new DirtyTracker() : null;
+    }
 
-        return false;
+    /**
+     * Sets the executor running the drain loops of the publishers returned by {@link #publishAll()}. If not set, the
+     * entities are read and emitted by the thread requesting them.
+     *
+     * @param publisherExecutor the executor.
+     */
+    public void setPublisherExecutor(Executor publisherExecutor) {
+        this.publisherExecutor = publisherExecutor;
     }
 
     /**
-     * Check if the filed is annotated.
+     * Gets the cache of parsed query templates used to execute the {@link MongoFilter}.
      *
-     * @param field      field from current class or parent class.
-     * @param annotation the annotation we are searching for.
-     * @return true if found false if not.
+     * @return the cache, shared by all Crud services.
      */
-    private boolean hasAnnotation(Field field, Class annotation) {
-        for (Annotation ann : field.getAnnotations()) {
-            if (ann.annotationType().getName().equals(annotation.getName())) {
-                return true;
-            }
+    public QueryTemplateCache getQueryTemplateCache() {
+        return queryTemplates;
+    }
+
+    private ForkJoinPool getFilterPool() {
+        ForkJoinPool pool = filterPool;
+        if (pool == null) {
+            throw new IllegalStateException("No filter pool set on the Crud service of " + entityClass.getName());
         }
-        return false;
+        return pool;
     }
 
+    /**
+     * Get the value of the id field from an entity.
+     * @param o the entity who's field we wish to access.
+     * @return the value from the field.
+     */
+    private K getEntityId(T o) {
+        return (K) idAccessor.get(o);
+    }
 
     /**
      * Gets the entity class that is using the database.
@@ -223,246 +458,1568 @@ public class JongoCRUDService<T, K extends Serializable> implements JongoCRUD<T,
      */
     @Override
     public T save(T o) {
-        if (! o.getClass().equals(entityClass)) {
-            // probably a super class
-            o = createFromCustomConstructor(o);
+        o = toEntity(o);
+        DirtyTracker tracker = dirtyTracker;
+        if (tracker != null && saveChanges(tracker, o)) {
+            return o;
         }
         WriteResult result = collection.save(o);
+        invalidate(getEntityId(o));
+        if (countCache != null) {
+            if (result.wasAcknowledged()) {
+                countCache.adjust(result.isUpdateOfExisting() ? 0 : 1);
+            } else {
+                countCache.invalidate();
+            }
+        }
         if (result.getError() != null) {
             throw new RuntimeException("Cannot save instance " + o + " in " + collection.getName() + " : " + result.getLastError());
         } else {
-            return o;
+            return track(o);
         }
     }
 
-    private T createFromCustomConstructor(T o) {
-        // Try to find a constructor that match the class of o
-        try {
-            Constructor<T> constructor = entityClass.getConstructor(o.getClass());
-            if (! constructor.isAccessible()) {
-                constructor.setAccessible(true);
-            }
-            return constructor.newInstance(o);
-        } catch (NoSuchMethodException e) {
-             throw new RuntimeException("The object " + o + " cannot be saved - incompatible type and no 'copy' " +
-                     "constructor. The class " + entityClass.getName() + " requires a constructor accepting a " + o
-                     .getClass().getName() + " has unique parameter.");
-        } catch (InvocationTargetException e) {
-            throw new RuntimeException("The object " + o + " cannot be saved - the constructor has thrown an " +
-                    "exception", e);
-        } catch (InstantiationException e) {
-            throw new RuntimeException("The object " + o + " cannot be saved - the class cannot be instantiated");
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException("The object " + o + " cannot be saved - unaccessible constructor");
+    /**
+     * Saves the modified fields of a tracked entity.
+     *
+     * @param tracker the dirty tracker.
+     * @param o       the entity.
+     * @return {@code true} if the entity has been saved, {@code false} if it is not tracked or if its document no
+     * longer exists, in which case the whole entity must be saved.
+     */
+    private boolean saveChanges(DirtyTracker tracker, T o) {
+        DBObject snapshot = tracker.snapshotOf(o);
+        if (snapshot == null) {
+            return false;
+        }
+        DBObject document = toDBObject(o);
+        DBObject update = DirtyTracker.diff(snapshot, document);
+        if (update.keySet().isEmpty()) {
+            return true;
+        }
+        Object dbId = document.get(ID);
+        WriteResult result = collection.getDBCollection().update(byId(dbId), update);
+        invalidate(dbId);
+        if (result.wasAcknowledged() && result.getN() == 0) {
+            return false;
         }
+        tracker.track(o, document);
+        return true;
     }
 
     /**
-     * Save a new copy of the entity in the iterable list if it doesn't exist, or updates if it does exists.
+     * Records the state of an entity, if the dirty tracking is enabled.
      *
-     * @param iterable the collection of entities to be saved.
-     * @return an iterable of the collections of entities that were saved.
+     * @param entity the entity.
+     * @return the entity.
      */
-    @Override
-    public Iterable<T> save(Iterable<T> iterable) {
-        List<T> list = new ArrayList<>();
-        for (T t : iterable) {
-            list.add(save(t));
+    private T track(T entity) {
+        DirtyTracker tracker = dirtyTracker;
+        if (tracker != null && entity != null) {
+            tracker.track(entity, toDBObject(entity));
         }
-        iterable = list;
-        return iterable;
+        return entity;
     }
 
     /**
-     * Find an object from the database by it's unique Id number.
+     * Updates some fields of the entity having the given id, without loading it. Fields mapped to {@code null} are
+     * removed from the document, other fields are set to the given value, marshalled as in the parameters of a
+     * {@link MongoFilter}. Field names can use the dot notation to update nested fields. An empty map does not
+     * modify the document, but the entity must exist.
      *
-     * @param id the unique id of the object.
-     * @return the object if it exists, otherwise return null.
+     * @param id     the id of the entity.
+     * @param fields the new values of the fields.
+     * @throws IllegalArgumentException if there is no entity with this id.
      */
     @Override
-    public T findOne(K id) {
-
-        if (id == null) {
-            return null;
-        }
-
-        if (idFieldType.equals(ObjectId.class)) {
-            String oid = id.toString();
-            if (ObjectId.isValid(oid)) {
-                return collection.findOne(withOid(id.toString())).as(entityClass);
+    public void update(K id, Map<String, ?> fields) {
+        BasicDBObject set = new BasicDBObject();
+        BasicDBObject unset = new BasicDBObject();
+        for (Map.Entry<String, ?> field : fields.entrySet()) {
+            if (ID.equals(field.getKey())) {
+                throw new IllegalArgumentException("The id of an entity cannot be updated");
+            }
+            if (field.getValue() == null) {
+                unset.put(field.getKey(), "");
             } else {
-                return null;
+                set.put(field.getKey(), QueryTemplate.marshall(field.getValue(), mapper));
             }
         }
-
-        if (idFieldType.equals(String.class) || idFieldType.equals(Long.class) || idFieldType.equals(Long.TYPE)) {
-            return collection.findOne(createIdQuery(id)).as(entityClass);
+        BasicDBObject update = new BasicDBObject();
+        if (!set.isEmpty()) {
+            update.put("$set", set);
+        }
+        if (!unset.isEmpty()) {
+            update.put("$unset", unset);
         }
+        if (update.isEmpty()) {
+            // Nothing to write, but the entity must still exist
+            if (!exists(id)) {
+                throw new IllegalArgumentException("Unable to update the entity with id " + id + " : Not found");
+            }
+            return;
+        }
+        applyUpdate(id, update);
+    }
 
-        throw new IllegalArgumentException("Id of type '" + id + "' is not supported");
+    /**
+     * Updates the entity having the given id, without loading it, using a Mongo update document such as
+     * {@code {$set: {name: #}, $unset: {nickname: ''}}}. The placeholders are replaced by the parameters as in a
+     * {@link MongoFilter}.
+     *
+     * @param id     the id of the entity.
+     * @param update the update document.
+     * @param params the parameters.
+     * @throws IllegalArgumentException if there is no entity with this id.
+     */
+    @Override
+    public void update(K id, String update, Object... params) {
+        applyUpdate(id, queryTemplates.bind(update, params, mapper));
     }
 
     /**
-     * Find one entity using the Mongo filter which gives us access to mongo query string formats.
+     * Atomically increments a numeric field of the entity having the given id, using {@code $inc}. The field is
+     * created if missing.
      *
-     * @param filter what we are searching for.
-     * @return the einity if found otherwise returns null.
+     * @param id    the id of the entity.
+     * @param field the field, using the dot notation for nested fields.
+     * @param delta the increment, negative to decrement.
+     * @throws IllegalArgumentException if there is no entity with this id.
      */
     @Override
-    public T findOne(EntityFilter<T> filter) {
-        if (filter instanceof MongoFilter) {
-            final MongoFilter dbFilter = (MongoFilter) filter;
-            return collection.findOne(dbFilter.getFilter(),
-                    dbFilter.getParams()).as(entityClass);
-        } else {
-            for (T entity : findAll()) {
-                if (filter.accept(entity)) {
-                    return entity;
-                }
-            }
-        }
-        return null;
+    public void increment(K id, String field, Number delta) {
+        applyUpdate(id, operator("$inc", field, delta));
     }
 
     /**
-     * Find all of the objects in a Mongo Collection.
+     * Atomically appends a value to an array field of the entity having the given id, using {@code $push}.
      *
-     * @return an iterable of the entity type.
+     * @param id    the id of the entity.
+     * @param field the array field.
+     * @param value the value, marshalled as the parameters of a {@link MongoFilter}.
+     * @throws IllegalArgumentException if there is no entity with this id.
      */
     @Override
-    public Iterable<T> findAll() {
-        return collection.find().as(entityClass);
+    public void push(K id, String field, Object value) {
+        applyUpdate(id, operator("$push", field, value));
     }
 
+    /**
+     * Atomically appends a value to an array field of the entity having the given id, unless the array already
+     * contains the value, using {@code $addToSet}.
+     *
+     * @param id    the id of the entity.
+     * @param field the array field.
+     * @param value the value, marshalled as the parameters of a {@link MongoFilter}.
+     * @throws IllegalArgumentException if there is no entity with this id.
+     */
     @Override
-    public Iterable<T> findAll(Iterable<K> iterable) {
-        List<T> entities = new ArrayList<>();
-        for (K key : iterable) {
-            T entity = findOne(key);
-            if (entity == null) {
-                throw new IllegalArgumentException("Cannot find an entity of type " + entityClass + " with id " + key);
-            }
-            entities.add(entity);
-        }
-        return entities;
+    public void addToSet(K id, String field, Object value) {
+        applyUpdate(id, operator("$addToSet", field, value));
     }
 
     /**
-     * Find all of the objects in a Mongo Collection using a filter.
+     * Atomically removes all the occurrences of a value from an array field of the entity having the given id, using
+     * {@code $pull}.
      *
-     * @param filter what we want to search for.
-     * @return an iterable of the entity type.
+     * @param id    the id of the entity.
+     * @param field the array field.
+     * @param value the value, marshalled as the parameters of a {@link MongoFilter}.
+     * @throws IllegalArgumentException if there is no entity with this id.
      */
     @Override
-    public Iterable<T> findAll(EntityFilter<T> filter) {
-        if (filter instanceof MongoFilter) {
-            final MongoFilter dbFilter = (MongoFilter) filter;
-            return collection.find(dbFilter.getFilter(),
-                    dbFilter.getParams()).as(entityClass);
-        } else {
-            List<T> entities = new ArrayList<>();
-            for (T entity : findAll()) {
-                if (filter.accept(entity)) {
-                    entities.add(entity);
-                }
-            }
-            return entities;
-        }
+    public void pull(K id, String field, Object value) {
+        applyUpdate(id, operator("$pull", field, value));
     }
 
     /**
-     * Delete an object by  from the collection if it exists.
+     * Atomically updates the entity having the given id and returns it once modified, in a single round trip. The
+     * update document uses {@code #} as placeholder for the parameters, as in {@link #update(Serializable, String,
+     * Object...)}.
      *
-     * @param id of the object you wish to delete for.
-     *           If the id doesn't exist there is an IllegalArgumentException.
-     *           <p>
-     *           Note: as far as I can tell jongo only supports remove for object id types and not others.
+     * @param id     the id of the entity.
+     * @param update the update document.
+     * @param params the parameters.
+     * @return the modified entity, {@code null} if there is no entity with this id.
      */
     @Override
-    public void delete(K id) {
-        WriteResult result;
-        if (idFieldType.equals(ObjectId.class)) {
-            result = collection.remove(withOid(String.valueOf(id)));
-        } else {
-            result = collection.remove(createIdQuery(id));
+    public T findAndModify(K id, String update, Object... params) {
+        DBObject modifier = queryTemplates.bind(update, params, mapper);
+        Object dbId = toDatabaseId(id);
+        if (dbId == null) {
+            return null;
+        }
+        DBObject document = collection.getDBCollection().findAndModify(byId(dbId), null, null, false, modifier,
+                true, false);
+        invalidate(dbId);
+        return document == null ? null : track(unmarshall(document));
+    }
 
+    /**
+     * Creates an update document applying an operator to a single field.
+     *
+     * @param operator the operator.
+     * @param field    the field.
+     * @param value    the operand, marshalled as the parameters of a {@link MongoFilter}.
+     * @return the update document.
+     */
+    private DBObject operator(String operator, String field, Object value) {
+        if (ID.equals(field)) {
+            throw new IllegalArgumentException("The id of an entity cannot be updated");
         }
-        //get n is number of docs effected by operation in mongo
-        if (result.getN() == 0) {
-            throw new IllegalArgumentException("Unable to delete Id '" + id + "' not found");
+        return new BasicDBObject(operator, new BasicDBObject(field, QueryTemplate.marshall(value, mapper)));
+    }
+
+    /**
+     * Applies an update to the document having the given id.
+     *
+     * @param id     the id of the entity.
+     * @param update the update document.
+     * @throws IllegalArgumentException if there is no entity with this id.
+     */
+    private void applyUpdate(K id, DBObject update) {
+        Object dbId = toDatabaseId(id);
+        if (dbId == null) {
+            throw new IllegalArgumentException("Unable to update the entity with id " + id + " : Not found");
+        }
+        int count = collection.getDBCollection().update(byId(dbId), update).getN();
+        invalidate(dbId);
+        if (count == 0) {
+            throw new IllegalArgumentException("Unable to update the entity with id " + id + " : Not found");
         }
     }
 
     /**
-     * Delete an object by  from the collection if it exists.
+     * Converts sub-class instances to the entity class using the 'copy' constructor.
      *
-     * @param o is an object that is an entity. It needs to have a valid _id field.
-     * @return returns the original object passed in.
-     * If the id doesn't exist there is an IllegalArgumentException.
+     * @param o the object to save.
+     * @return the instance to write in the database.
      */
-    @Override
-    public T delete(T o) {
-        K id = getEntityId(o);
-        delete(id);
+    private T toEntity(T o) {
+        if (! o.getClass().equals(entityClass)) {
+            // probably a super class
+            return createFromCustomConstructor(o);
+        }
         return o;
     }
 
+    private T createFromCustomConstructor(T o) {
+        // Use the constructor that match the class of o, the lookup is cached by the entity metadata
+        return entityClass.cast(metadata.getCopyConstructor(o.getClass()).newInstance(o));
+    }
 
     /**
-     * Delete a list of objects in the form of iterable from the collection if they exist.
+     * Save a new copy of the entity in the iterable list if it doesn't exist, or updates if it does exists. The
+     * entities are written using bulk writes (see {@link #saveAll(Iterable)}).
      *
-     * @param iterable is an iterable of entities.
-     * @return the original iterable.
+     * @param iterable the collection of entities to be saved.
+     * @return an iterable of the collections of entities that were saved.
+     * @throws RuntimeException if at least one of the entity cannot be saved, the others are saved anyway.
      */
     @Override
-    public Iterable<T> delete(Iterable<T> iterable) {
-        for (T temp : iterable) {
-            delete(temp);
+    public Iterable<T> save(Iterable<T> iterable) {
+        BatchResult<T> result = saveAll(iterable);
+        if (result.hasFailures()) {
+            throw new RuntimeException("Cannot save " + result.getFailures().size() + " instance(s) in "
+                    + collection.getName() + " : " + result.getFailures());
         }
-        return iterable;
+        return result.getWritten();
     }
 
     /**
-     * Method provided by jongo to delete everything in the collection. Use with caution.
+     * Save the entities in chunks of {@code batchSize} documents, each chunk being a single unordered bulk write.
+     * Entities without id get a generated ObjectId and are inserted, the others are upserted by id.
+     *
+     * @param entities the entities to save.
+     * @return the written entities and the failures.
      */
-    public void deleteAllFromCollection() {
-        collection.remove();
+    @Override
+    public BatchResult<T> saveAll(Iterable<T> entities) {
+        BatchResult<T> result = new BatchResult<>();
+        for (List<T> chunk : Iterables.partition(entities, batchSize)) {
+            saveChunk(chunk, result);
+        }
+        return result;
+    }
+
+    private void saveChunk(List<T> chunk, BatchResult<T> result) {
+        ObjectIdUpdater updater = mapper.getObjectIdUpdater();
+        BulkWriteOperation bulk = collection.getDBCollection().initializeUnorderedBulkOperation();
+        // The position in this list is the index of the request in the bulk operation
+        List<T> queued = new ArrayList<>(chunk.size());
+        for (T o : chunk) {
+            try {
+                T entity = toEntity(o);
+                if (updater.mustGenerateObjectId(entity)) {
+                    updater.setObjectId(entity, ObjectId.get());
+                    bulk.insert(toDBObject(entity));
+                } else {
+                    DBObject document = toDBObject(entity);
+                    bulk.find(new BasicDBObject(ID, document.get(ID))).upsert().replaceOne(document);
+                }
+                queued.add(entity);
+            } catch (RuntimeException e) {
+                result.addFailure(o, e.getMessage());
+            }
+        }
+
+        if (queued.isEmpty()) {
+            return;
+        }
+
+        Set<Integer> failed = new HashSet<>();
+        String globalError = null;
+        try {
+            adjustCount(bulk.execute());
+        } catch (BulkWriteException e) {
+            adjustCount(e.getWriteResult());
+            for (BulkWriteError error : e.getWriteErrors()) {
+                failed.add(error.getIndex());
+                result.addFailure(queued.get(error.getIndex()), error.getMessage());
+            }
+            if (e.getWriteConcernError() != null) {
+                globalError = e.getWriteConcernError().getMessage();
+            }
+        }
+
+        for (int i = 0; i < queued.size(); i++) {
+            invalidate(getEntityId(queued.get(i)));
+            if (failed.contains(i)) {
+                continue;
+            }
+            if (globalError != null) {
+                result.addFailure(queued.get(i), globalError);
+            } else {
+                result.addWritten(queued.get(i));
+            }
+        }
     }
 
     /**
-     * Checks to see if the object exists in the Mongo Collection based on its ID.
+     * Adjusts the count cache, if enabled, with the documents inserted by a bulk write.
      *
-     * @param id of the object to search for.
-     * @return true if found false if not found.
+     * @param result the result of the bulk write.
      */
-    @Override
-    public boolean exists(K id) {
-        return findOne(id) != null;
+    private void adjustCount(BulkWriteResult result) {
+        if (countCache == null) {
+            return;
+        }
+        if (result.isAcknowledged()) {
+            countCache.adjust(result.getInsertedCount() + result.getUpserts().size());
+        } else {
+            countCache.invalidate();
+        }
     }
 
-
     /**
-     * Count the number of objects that are of the entity type in a Mongo Collection.
+     * Replaces the document matching the filter by the entity, or inserts the entity if no document matches, in a
+     * single round trip. Entities without id get the id of the replaced document, or the id generated by the
+     * database.
      *
-     * @return count as type Long.
+     * @param filter the filter selecting the document to replace, either a {@link MongoFilter} or a
+     *               {@link QueryFilter}.
+     * @param entity the entity.
+     * @return the entity, with its id.
+     * @throws IllegalArgumentException if the filter cannot be evaluated by the database.
      */
     @Override
-    public long count() {
-        return collection.count();
+    public T upsert(EntityFilter<T> filter, T entity) {
+        MongoFilter<T> dbFilter = toMongoFilter(filter);
+        T o = toEntity(entity);
+        ObjectIdUpdater updater = mapper.getObjectIdUpdater();
+        boolean generated = updater.mustGenerateObjectId(o);
+        DBObject upserted = collection.getDBCollection().findAndModify(toQuery(dbFilter), ID_PROJECTION, null,
+                false, toReplacement(o, generated), true, true);
+        Object dbId = upserted.get(ID);
+        if (generated) {
+            updater.setObjectId(o, (ObjectId) dbId);
+        }
+        invalidate(dbId);
+        if (countCache != null) {
+            countCache.invalidate();
+        }
+        return track(o);
     }
 
-    private String createIdQuery(K id) {
-        //for ids that are of type string
-        if (idFieldType.equals(String.class)) {
-            return "{" + ID + " : '" + id + "'}";
+    /**
+     * Replaces or inserts the entities in chunks of {@code batchSize} documents, each chunk being a single bulk
+     * write. Each entity replaces the document having the same values for the key fields, or is inserted if there is
+     * none. Entities without id get the id generated by the database when inserted.
+     * <p>
+     * Ordered upserts are executed one after the other and stop at the first failure, the following entities being
+     * reported as failures. Unordered upserts may be executed in any order, and a failure does not prevent the other
+     * upserts.
+     *
+     * @param entities  the entities.
+     * @param ordered   whether the upserts are ordered.
+     * @param keyFields the fields identifying the document replaced by an entity, using the dot notation for nested
+     *                  fields.
+     * @return the written entities and the failures.
+     */
+    @Override
+    public BatchResult<T> upsertAll(Iterable<T> entities, boolean ordered, String... keyFields) {
+        if (keyFields == null || keyFields.length == 0) {
+            throw new IllegalArgumentException("At least one key field is required to upsert entities");
         }
-        //for ids that are of type long
-        if (idFieldType.equals(Long.class) || idFieldType.equals(Long.TYPE)) {
-            return "{" + ID + " : " + id + "}";
+        BatchResult<T> result = new BatchResult<>();
+        boolean failed = false;
+        for (List<T> chunk : Iterables.partition(entities, batchSize)) {
+            if (failed) {
+                for (T o : chunk) {
+                    result.addFailure(o, NOT_EXECUTED);
+                }
+            } else {
+                failed = !upsertChunk(chunk, ordered, keyFields, result) && ordered;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Upserts a chunk of entities in a single bulk write.
+     *
+     * @param chunk     the entities.
+     * @param ordered   whether the upserts are ordered.
+     * @param keyFields the fields identifying the document replaced by an entity.
+     * @param result    the result to complete.
+     * @return {@code true} if all the entities have been written.
+     */
+    private boolean upsertChunk(List<T> chunk, boolean ordered, String[] keyFields, BatchResult<T> result) {
+        ObjectIdUpdater updater = mapper.getObjectIdUpdater();
+        DBCollection dbCollection = collection.getDBCollection();
+        BulkWriteOperation bulk = ordered ? dbCollection.initializeOrderedBulkOperation()
+                : dbCollection.initializeUnorderedBulkOperation();
+        // The position in this list is the index of the request in the bulk operation
+        List<T> queued = new ArrayList<>(chunk.size());
+        Set<Integer> generated = new HashSet<>();
+        boolean success = true;
+        for (T o : chunk) {
+            if (!success && ordered) {
+                result.addFailure(o, NOT_EXECUTED);
+                continue;
+            }
+            try {
+                T entity = toEntity(o);
+                boolean generate = updater.mustGenerateObjectId(entity);
+                DBObject document = toReplacement(entity, generate);
+                bulk.find(keyOf(document, keyFields)).upsert().replaceOne(document);
+                if (generate) {
+                    generated.add(queued.size());
+                }
+                queued.add(entity);
+            } catch (RuntimeException e) {
+                result.addFailure(o, e.getMessage());
+                success = false;
+            }
+        }
+
+        if (queued.isEmpty()) {
+            return success;
+        }
+
+        BulkWriteResult written;
+        Set<Integer> failed = new HashSet<>();
+        int firstFailure = queued.size();
+        String globalError = null;
+        try {
+            written = bulk.execute();
+        } catch (BulkWriteException e) {
+            written = e.getWriteResult();
+            for (BulkWriteError error : e.getWriteErrors()) {
+                failed.add(error.getIndex());
+                firstFailure = Math.min(firstFailure, error.getIndex());
+                result.addFailure(queued.get(error.getIndex()), error.getMessage());
+            }
+            if (e.getWriteConcernError() != null) {
+                globalError = e.getWriteConcernError().getMessage();
+            }
+        }
+        adjustCount(written);
+        if (written.isAcknowledged()) {
+            for (BulkWriteUpsert upsert : written.getUpserts()) {
+                if (generated.contains(upsert.getIndex())) {
+                    updater.setObjectId(queued.get(upsert.getIndex()), (ObjectId) upsert.getId());
+                }
+            }
+        }
+
+        boolean unknownIds = false;
+        for (int i = 0; i < queued.size(); i++) {
+            Object id = getEntityId(queued.get(i));
+            unknownIds |= id == null;
+            invalidate(id);
+            if (failed.contains(i)) {
+                continue;
+            }
+            if (ordered && i > firstFailure) {
+                result.addFailure(queued.get(i), NOT_EXECUTED);
+            } else if (globalError != null) {
+                result.addFailure(queued.get(i), globalError);
+            } else {
+                result.addWritten(queued.get(i));
+            }
+        }
+        if (unknownIds && entityCache != null) {
+            // The ids of the replaced documents are unknown
+            entityCache.invalidateAll();
+        }
+        return success && failed.isEmpty() && globalError == null;
+    }
+
+    /**
+     * Creates the document replacing the stored document of an entity.
+     *
+     * @param entity   the entity.
+     * @param withoutId whether the id must be left out, to keep the id of the replaced document or let the database
+     *                 generate it.
+     * @return the document.
+     */
+    private DBObject toReplacement(T entity, boolean withoutId) {
+        BasicDBObject document = new BasicDBObject(toDBObject(entity).toMap());
+        if (withoutId) {
+            document.removeField(ID);
+        }
+        return document;
+    }
+
+    /**
+     * Creates the query selecting the document having the same key fields as the given document.
+     *
+     * @param document  the document.
+     * @param keyFields the key fields, using the dot notation for nested fields.
+     * @return the query.
+     */
+    private static DBObject keyOf(DBObject document, String[] keyFields) {
+        BasicDBObject key = new BasicDBObject();
+        for (String field : keyFields) {
+            key.put(field, valueOf(document, field));
+        }
+        return key;
+    }
+
+    /**
+     * Gets the value of a field of a document.
+     *
+     * @param document the document.
+     * @param field    the field, using the dot notation for nested fields.
+     * @return the value, {@code null} if the field is missing.
+     */
+    private static Object valueOf(DBObject document, String field) {
+        Object value = document;
+        for (String name : field.split("\\.")) {
+            value = value instanceof BSONObject ? ((BSONObject) value).get(name) : null;
+        }
+        return value;
+    }
+
+    private DBObject toDBObject(T entity) {
+        return mapper.getMarshaller().marshall(entity).toDBObject();
+    }
+
+    /**
+     * Find an object from the database by it's unique Id number. The query is built as a {@link DBObject}, no query
+     * string is parsed.
+     *
+     * @param id the unique id of the object.
+     * @return the object if it exists, otherwise return null.
+     */
+    @Override
+    public T findOne(K id) {
+        Object dbId = toDatabaseId(id);
+        if (dbId == null) {
+            return null;
+        }
+        DBObject document = findDocument(dbId);
+        return document == null ? null : track(unmarshall(document));
+    }
+
+    /**
+     * Retrieves a document by id, from the entity cache if enabled. Ids known to be absent by the negative cache are
+     * not looked up.
+     *
+     * @param dbId the id, already converted using {@link #toDatabaseId(Serializable)}.
+     * @return the document, {@code null} if not found.
+     */
+    private DBObject findDocument(Object dbId) {
+        MissingIdCache absent = missingIds;
+        if (absent == null) {
+            return loadDocument(dbId);
+        }
+        Object key = toLookupKey(dbId);
+        if (isMissing(absent, key)) {
+            return null;
+        }
+        long generation = absent.generation();
+        DBObject document = loadDocument(dbId);
+        if (document == null) {
+            absent.missing(key, generation);
+        }
+        return document;
+    }
+
+    /**
+     * Retrieves a document by id, from the entity cache if enabled.
+     *
+     * @param dbId the id, already converted using {@link #toDatabaseId(Serializable)}.
+     * @return the document, {@code null} if not found.
+     */
+    private DBObject loadDocument(Object dbId) {
+        if (entityCache == null) {
+            return findOneDocument(byId(dbId), null);
+        }
+        Object key = toLookupKey(dbId);
+        DBObject document = entityCache.get(key);
+        if (document == null) {
+            long generation = entityCache.generation();
+            long start = System.nanoTime();
+            document = findOneDocument(byId(dbId), null);
+            entityCache.recordLoad(1, System.nanoTime() - start);
+            if (document != null) {
+                entityCache.put(key, document, generation);
+            }
+        }
+        return document;
+    }
+
+    /**
+     * Find one entity using the Mongo filter which gives us access to mongo query string formats. {@link QueryFilter}
+     * are compiled to Mongo queries. Other filters are evaluated on every entity of the collection.
+     *
+     * @param filter what we are searching for.
+     * @return the einity if found otherwise returns null.
+     */
+    @Override
+    public T findOne(EntityFilter<T> filter) {
+        filter = compile(filter);
+        if (filter instanceof MongoFilter) {
+            MongoFilter<T> dbFilter = (MongoFilter<T>) filter;
+            QueryResultCache cache = queryCache;
+            DBObject document = cache == null ? findFirst(dbFilter, toQuery(dbFilter), toProjection(dbFilter))
+                    : findOneCached(cache, dbFilter);
+            return document == null ? null : trackUnlessProjected(dbFilter, unmarshall(document));
+        } else {
+            FilteringIterable<T> entities = new FilteringIterable<>(collection, entityClass, filter, batchSize);
+            try {
+                Iterator<T> iterator = entities.iterator();
+                return iterator.hasNext() ? track(iterator.next()) : null;
+            } finally {
+                entities.close();
+            }
+        }
+    }
+
+    /**
+     * Find all of the objects in a Mongo Collection.
+     *
+     * @return an iterable of the entity type.
+     */
+    @Override
+    public Iterable<T> findAll() {
+        return collection.find().as(entityClass);
+    }
+
+    /**
+     * Find the entities having the given ids. The ids are sent in chunks of {@code batchSize} using
+     * {@code {_id : {$in : [...]}}} queries.
+     *
+     * @param iterable the ids.
+     * @return the entities, in the order of the given ids.
+     * @throws IllegalArgumentException if one of the id cannot be found.
+     */
+    @Override
+    public Iterable<T> findAll(Iterable<K> iterable) {
+        List<K> keys = Lists.newArrayList(iterable);
+        Map<Object, T> found = new HashMap<>();
+        List<Object> missing = new ArrayList<>(keys.size());
+        for (K key : keys) {
+            Object id = toDatabaseId(key);
+            if (id == null) {
+                continue;
+            }
+            DBObject cached = entityCache == null ? null : entityCache.get(toLookupKey(id));
+            if (cached != null) {
+                found.put(toLookupKey(id), track(unmarshall(cached)));
+            } else {
+                missing.add(id);
+            }
+        }
+
+        long generation = entityCache == null ? 0 : entityCache.generation();
+        long start = System.nanoTime();
+        for (List<Object> chunk : Lists.partition(missing, batchSize)) {
+            for (DBObject document : find(byIds(chunk), null)) {
+                Object key = toLookupKey(document.get(ID));
+                found.put(key, track(unmarshall(document)));
+                if (entityCache != null) {
+                    entityCache.put(key, document, generation);
+                }
+            }
+        }
+        if (entityCache != null && !missing.isEmpty()) {
+            entityCache.recordLoad(missing.size(), System.nanoTime() - start);
+        }
+
+        List<T> entities = new ArrayList<>(keys.size());
+        for (K key : keys) {
+            T entity = key == null ? null : found.get(toLookupKey(key));
+            if (entity == null) {
+                throw new IllegalArgumentException("Cannot find an entity of type " + entityClass + " with id " + key);
+            }
+            entities.add(entity);
+        }
+        return entities;
+    }
+
+    /**
+     * Converts an id to the value stored in the {@code _id} field of the documents.
+     *
+     * @param id the id.
+     * @return the value to use in queries, {@code null} if the id cannot match any document.
+     */
+    private Object toDatabaseId(K id) {
+        if (id == null) {
+            return null;
+        }
+        if (idFieldType.equals(ObjectId.class)) {
+            String oid = id.toString();
+            return ObjectId.isValid(oid) ? new ObjectId(oid) : null;
+        }
+        if (idFieldType.equals(String.class)) {
+            return id.toString();
+        }
+        if (idFieldType.equals(Long.class) || idFieldType.equals(Long.TYPE)) {
+            return ((Number) id).longValue();
         }
-        //any other id type than String, Long, or ObjectId are not currently support
         throw new IllegalArgumentException("Id of type '" + id + "' is not supported");
+    }
+
+    /**
+     * Normalizes an id (given by the caller or read from an entity) so both can be compared. ObjectIds may be
+     * represented as {@link ObjectId} or as String, and long ids may be boxed or not.
+     *
+     * @param id the id.
+     * @return the normalized id.
+     */
+    private Object toLookupKey(Object id) {
+        if (id == null) {
+            return null;
+        }
+        if (idFieldType.equals(ObjectId.class)) {
+            return id.toString();
+        }
+        if (id instanceof Number) {
+            return ((Number) id).longValue();
+        }
+        return id;
+    }
+
+    /**
+     * Find all of the objects in a Mongo Collection using a filter. {@link QueryFilter} are compiled to Mongo
+     * queries. Other filters are evaluated lazily on every entity of the collection: the returned iterable is
+     * {@link java.io.Closeable} and must be closed if the iteration is not completed.
+     *
+     * @param filter what we want to search for.
+     * @return an iterable of the entity type.
+     */
+    @Override
+    public Iterable<T> findAll(EntityFilter<T> filter) {
+        filter = compile(filter);
+        if (filter instanceof MongoFilter) {
+            MongoFilter<T> dbFilter = (MongoFilter<T>) filter;
+            QueryResultCache cache = queryCache;
+            if (cache != null) {
+                return findAllCached(cache, dbFilter);
+            }
+            return new EntityIterable<>(collection.getDBCollection(), toQuery(dbFilter), toProjection(dbFilter),
+                    toCursorOptions(dbFilter), mapper, entityClass);
+        } else {
+            return new FilteringIterable<>(collection, entityClass, filter, batchSize);
+        }
+    }
+
+    /**
+     * Records the state of an entity retrieved by a Mongo filter, unless only some fields were retrieved.
+     *
+     * @param dbFilter the filter.
+     * @param entity   the entity.
+     * @return the entity.
+     */
+    private T trackUnlessProjected(MongoFilter<T> dbFilter, T entity) {
+        return dbFilter.getProjection() == null ? track(entity) : entity;
+    }
+
+    /**
+     * Gets the first document matching a Mongo filter from the query result cache, executing the query on a miss.
+     *
+     * @param cache    the cache.
+     * @param dbFilter the filter.
+     * @return the document, {@code null} if none matches.
+     */
+    private DBObject findOneCached(QueryResultCache cache, MongoFilter<T> dbFilter) {
+        DBObject query = toQuery(dbFilter);
+        DBObject projection = toProjection(dbFilter);
+        QueryResultCache.Key key = QueryResultCache.key(true, query, projection, dbFilter.getOptions());
+        List<DBObject> documents = cache.get(key);
+        if (documents == null) {
+            long version = cache.version();
+            DBObject document = findFirst(dbFilter, query, projection);
+            documents = document == null ? Collections.<DBObject>emptyList() : Collections.singletonList(document);
+            cache.put(key, documents, version);
+        }
+        return documents.isEmpty() ? null : documents.get(0);
+    }
+
+    /**
+     * Gets the documents matching a Mongo filter from the query result cache, executing the query on a miss. When
+     * the result is too large to be cached, the cursor is not executed again: the returned iterable continues it
+     * after the documents already read.
+     *
+     * @param cache    the cache.
+     * @param dbFilter the filter.
+     * @return the entities.
+     */
+    private Iterable<T> findAllCached(QueryResultCache cache, MongoFilter<T> dbFilter) {
+        DBObject query = toQuery(dbFilter);
+        DBObject projection = toProjection(dbFilter);
+        QueryResultCache.Key key = QueryResultCache.key(false, query, projection, dbFilter.getOptions());
+        List<DBObject> documents = cache.get(key);
+        if (documents != null) {
+            return unmarshall(documents);
+        }
+        long version = cache.version();
+        CursorOptions options = toCursorOptions(dbFilter);
+        DBCursor cursor = options.applyTo(find(query, projection));
+        documents = new ArrayList<>();
+        try {
+            while (documents.size() <= cache.getMaxResultSize() && cursor.hasNext()) {
+                documents.add(cursor.next());
+            }
+        } catch (RuntimeException e) {
+            cursor.close();
+            throw e;
+        }
+        if (documents.size() > cache.getMaxResultSize()) {
+            return new EntityIterable<>(collection.getDBCollection(), query, projection, options, mapper,
+                    entityClass, documents, cursor);
+        }
+        cursor.close();
+        cache.put(key, Collections.unmodifiableList(documents), version);
+        return unmarshall(documents);
+    }
+
+    /**
+     * Unmarshalls documents into new entities, so cached documents are never shared with the caller.
+     *
+     * @param documents the documents.
+     * @return the entities.
+     */
+    private List<T> unmarshall(List<DBObject> documents) {
+        List<T> entities = new ArrayList<>(documents.size());
+        for (DBObject document : documents) {
+            entities.add(unmarshall(document));
+        }
+        return entities;
+    }
+
+    /**
+     * Publishes all the objects of the Mongo Collection. Documents are pulled from the cursor as the subscriber
+     * requests them, in batches of {@code batchSize} documents, and cancelling the subscription closes the cursor.
+     *
+     * @return the publisher, running the query on each subscription.
+     */
+    @Override
+    public Publisher<T> publishAll() {
+        return new CursorPublisher<>(collection.getDBCollection(), new BasicDBObject(), null, batchSize,
+                CursorOptions.NONE, mapper, entityClass, null, publisherExecutor);
+    }
+
+    /**
+     * Publishes the objects matching a filter, as {@link #publishAll()}. {@link QueryFilter} and {@link MongoFilter}
+     * are evaluated by the database, other filters are evaluated on every entity of the collection as the subscriber
+     * requests them.
+     *
+     * @param filter the filter.
+     * @return the publisher, running the query on each subscription.
+     */
+    @Override
+    public Publisher<T> publishAll(EntityFilter<T> filter) {
+        EntityFilter<T> compiled = compile(filter);
+        if (compiled instanceof MongoFilter) {
+            MongoFilter<T> dbFilter = (MongoFilter<T>) compiled;
+            return new CursorPublisher<>(collection.getDBCollection(), toQuery(dbFilter), toProjection(dbFilter),
+                    batchSize, toCursorOptions(dbFilter), mapper, entityClass, null, publisherExecutor);
+        }
+        return new CursorPublisher<>(collection.getDBCollection(), new BasicDBObject(), null, batchSize,
+                CursorOptions.NONE, mapper, entityClass, compiled, publisherExecutor);
+    }
+
+    /**
+     * Finds a page of the objects matching a filter, sorted by a field then by id. The token records the sort value
+     * and the id of the last document of the page, the next page only retrieves the documents following them in the
+     * sort order. The sort, skip and limit of the filter options are ignored.
+     * <p>
+     * As MongoDB sorts the values by type first (null and missing values, numbers, strings, documents...) and range
+     * operators only match values of the same type, the seek also selects the values of the types following the type
+     * of the last value. The sort field can thus be missing or hold values of different types, but not arrays.
+     *
+     * @param filter    the filter, evaluable by the database ({@link MongoFilter} or {@link QueryFilter}).
+     * @param sortField the sort field, {@code null} to sort by id only.
+     * @param ascending whether the objects are sorted in ascending order.
+     * @param pageSize  the maximum number of objects of the page.
+     * @param token     the token of the previous page, {@code null} to retrieve the first page.
+     * @return the page.
+     * @throws IllegalArgumentException if the page size is not positive, the token is invalid or was created for
+     *                                  another sort, or the sort field holds an array.
+     */
+    @Override
+    public Page<T> findPage(EntityFilter<T> filter, String sortField, boolean ascending, int pageSize,
+                            String token) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("The page size must be positive, " + pageSize + " given");
+        }
+        if (ID.equals(sortField)) {
+            sortField = null;
+        }
+        MongoFilter<T> dbFilter = toMongoFilter(filter);
+        DBObject query = toQuery(dbFilter);
+        if (token != null) {
+            query = new BasicDBObject("$and", Arrays.asList(query, seek(sortField, ascending, token)));
+        }
+        int direction = ascending ? 1 : -1;
+        BasicDBObject sort = new BasicDBObject();
+        if (sortField != null) {
+            sort.put(sortField, direction);
+        }
+        sort.put(ID, direction);
+
+        // one more document is read to know whether a next page exists
+        int limit = pageSize == Integer.MAX_VALUE ? pageSize : pageSize + 1;
+        List<DBObject> documents = new ArrayList<>();
+        try (DBCursor cursor = toCursorOptions(dbFilter).applyTo(find(query, toProjection(dbFilter))).sort(sort)
+                .skip(0).limit(limit)) {
+            while (cursor.hasNext()) {
+                documents.add(cursor.next());
+            }
+        }
+        String next = null;
+        if (documents.size() > pageSize) {
+            documents.remove(pageSize);
+            DBObject last = documents.get(pageSize - 1);
+            Object value = null;
+            if (sortField != null) {
+                value = valueOf(last, sortField);
+                // fails early on the values that cannot be sought
+                typeBracket(value);
+            }
+            BasicDBObject position = new BasicDBObject("f", sortField == null ? ID : sortField)
+                    .append("a", ascending)
+                    .append("v", value)
+                    .append("i", last.get(ID));
+            next = BaseEncoding.base64Url().encode(new BasicBSONEncoder().encode(position));
+        }
+        return new Page<>(unmarshall(documents), next);
+    }
+
+    /**
+     * Creates the condition selecting the documents following the position recorded in a page token.
+     *
+     * @param sortField the sort field, {@code null} to sort by id only.
+     * @param ascending whether the objects are sorted in ascending order.
+     * @param token     the token.
+     * @return the condition.
+     */
+    private static DBObject seek(String sortField, boolean ascending, String token) {
+        BSONObject position;
+        try {
+            position = new BasicBSONDecoder().readObject(BaseEncoding.base64Url().decode(token));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid page token " + token, e);
+        }
+        String field = sortField == null ? ID : sortField;
+        if (!field.equals(position.get("f")) || !Boolean.valueOf(ascending).equals(position.get("a"))) {
+            throw new IllegalArgumentException("The page token " + token + " was not created for the sort "
+                    + field + (ascending ? " ascending" : " descending"));
+        }
+        String operator = ascending ? "$gt" : "$lt";
+        DBObject afterId = new BasicDBObject(ID, new BasicDBObject(operator, position.get("i")));
+        if (sortField == null) {
+            return afterId;
+        }
+        Object value = position.get("v");
+        int bracket = typeBracket(value);
+        List<DBObject> following = new ArrayList<>();
+        following.add(new BasicDBObject(sortField, value).append(ID, new BasicDBObject(operator, position.get("i"))));
+        if (value != null) {
+            // $gt and $lt only match the values of the same type
+            following.add(new BasicDBObject(sortField, new BasicDBObject(operator, value)));
+        }
+        for (int i = 0; i < TYPE_BRACKETS.length; i++) {
+            if (ascending ? i > bracket : i < bracket) {
+                for (int type : TYPE_BRACKETS[i]) {
+                    following.add(type == NULL_TYPE ? new BasicDBObject(sortField, null)
+                            : new BasicDBObject(sortField, new BasicDBObject("$type", type)));
+                }
+            }
+        }
+        return new BasicDBObject("$or", following);
+    }
+
+    /**
+     * Gets the position of the type of a value in {@link #TYPE_BRACKETS}.
+     *
+     * @param value the value, as decoded by the driver.
+     * @return the position.
+     * @throws IllegalArgumentException if the value cannot be used to seek a page.
+     */
+    private static int typeBracket(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof Number) {
+            return 1;
+        } else if (value instanceof String || value instanceof Symbol) {
+            return 2;
+        } else if (value instanceof List) {
+            throw new IllegalArgumentException("Cannot page on a field holding arrays");
+        } else if (value instanceof BSONObject) {
+            return 3;
+        } else if (value instanceof byte[] || value instanceof Binary) {
+            return 4;
+        } else if (value instanceof ObjectId) {
+            return 5;
+        } else if (value instanceof Boolean) {
+            return 6;
+        } else if (value instanceof Date) {
+            return 7;
+        } else if (value instanceof BSONTimestamp) {
+            return 8;
+        } else if (value instanceof Pattern) {
+            return 9;
+        }
+        throw new IllegalArgumentException("Cannot page on a field holding values of type "
+                + value.getClass().getName());
+    }
+
+    /**
+     * Find all of the objects in a Mongo Collection using a filter evaluated in parallel. {@link QueryFilter} and
+     * {@link MongoFilter} are evaluated by the database as in {@link #findAll(EntityFilter)}. Other filters are
+     * evaluated on the filter pool, batch by batch, while the next batch is fetched from the cursor. The filter must
+     * be thread-safe. The returned iterable is {@link java.io.Closeable} and must be closed if the iteration is not
+     * completed. A filter failure closes the cursor and cancels the pending batches before being rethrown.
+     *
+     * @param filter  what we want to search for.
+     * @param ordered whether the entities are returned in cursor order, or as soon as their batch is processed.
+     * @return an iterable of the entity type.
+     * @throws IllegalStateException if the filter must be evaluated in the JVM and no filter pool is set, see
+     *                               {@link #setFilterPool(ForkJoinPool)}.
+     */
+    @Override
+    public Iterable<T> findAllInParallel(EntityFilter<T> filter, boolean ordered) {
+        EntityFilter<T> compiled = compile(filter);
+        if (compiled instanceof MongoFilter) {
+            return findAll(compiled);
+        }
+        return new ParallelFilteringIterable<>(collection, mapper, entityClass, compiled, batchSize,
+                getFilterPool(), ordered);
+    }
+
+    /**
+     * Find an object by id, retrieving only some of its fields.
+     *
+     * @param id     the unique id of the object.
+     * @param type   the class the document is mapped to, the entity class or a class declaring a subset of its
+     *               fields.
+     * @param fields the fields to retrieve, the id is always retrieved.
+     * @param <P>    the type of the result.
+     * @return the object if it exists, otherwise return null.
+     */
+    @Override
+    public <P> P findOne(K id, Class<P> type, String... fields) {
+        Object dbId = toDatabaseId(id);
+        if (dbId == null) {
+            return null;
+        }
+        DBObject document = findOneDocument(byId(dbId), toProjection(fields));
+        return document == null ? null : unmarshall(document, type);
+    }
+
+    /**
+     * Find one entity matching the filter, retrieving only some of its fields. The filter must be evaluable by the
+     * database ({@link MongoFilter} or {@link QueryFilter}).
+     *
+     * @param filter what we are searching for.
+     * @param type   the class the document is mapped to, the entity class or a class declaring a subset of its
+     *               fields.
+     * @param fields the fields to retrieve, the id is always retrieved.
+     * @param <P>    the type of the result.
+     * @return the object if found otherwise returns null.
+     */
+    @Override
+    public <P> P findOne(EntityFilter<T> filter, Class<P> type, String... fields) {
+        MongoFilter<T> dbFilter = toMongoFilter(filter);
+        DBObject document = findFirst(dbFilter, toQuery(dbFilter), toProjection(fields));
+        return document == null ? null : unmarshall(document, type);
+    }
+
+    /**
+     * Find all of the objects matching the filter, retrieving only some of their fields. The filter must be evaluable
+     * by the database ({@link MongoFilter} or {@link QueryFilter}); use an empty {@link QueryFilter} to select all
+     * the objects. The returned iterable is {@link java.io.Closeable} and should be closed if the iteration is not
+     * completed.
+     *
+     * @param filter what we are searching for.
+     * @param type   the class the documents are mapped to, the entity class or a class declaring a subset of its
+     *               fields.
+     * @param fields the fields to retrieve, the id is always retrieved.
+     * @param <P>    the type of the results.
+     * @return an iterable of the given type.
+     */
+    @Override
+    public <P> Iterable<P> findAll(EntityFilter<T> filter, Class<P> type, String... fields) {
+        MongoFilter<T> dbFilter = toMongoFilter(filter);
+        return new EntityIterable<>(collection.getDBCollection(), toQuery(dbFilter), toProjection(fields),
+                toCursorOptions(dbFilter), mapper, type);
+    }
+
+    /**
+     * Compiles the given filter, and checks it can be evaluated by the database.
+     *
+     * @param filter the filter.
+     * @return the Mongo filter.
+     * @throws IllegalArgumentException if the filter cannot be evaluated by the database.
+     */
+    private MongoFilter<T> toMongoFilter(EntityFilter<T> filter) {
+        EntityFilter<T> compiled = compile(filter);
+        if (!(compiled instanceof MongoFilter)) {
+            throw new IllegalArgumentException("The filter " + filter + " cannot be evaluated by the database, "
+                    + "use a MongoFilter or a QueryFilter");
+        }
+        return (MongoFilter<T>) compiled;
+    }
+
+    /**
+     * Compiles the filters that can be evaluated by the database to a {@link MongoFilter}.
+     *
+     * @param filter the filter.
+     * @return the compiled filter, or the given filter if it cannot be compiled.
+     */
+    private EntityFilter<T> compile(EntityFilter<T> filter) {
+        if (filter instanceof QueryFilter) {
+            return ((QueryFilter<T>) filter).toMongoFilter();
+        }
+        return filter;
+    }
+
+    /**
+     * Delete an object by  from the collection if it exists.
+     *
+     * @param id of the object you wish to delete for.
+     *           If the id doesn't exist there is an IllegalArgumentException.
+     *           <p>
+     */
+    @Override
+    public void delete(K id) {
+        Object dbId = toDatabaseId(id);
+        //get n is number of docs effected by operation in mongo
+        if (dbId == null || remove(dbId) == 0) {
+            throw new IllegalArgumentException("Unable to delete Id '" + id + "' not found");
+        }
+    }
+
+    /**
+     * Delete an object by  from the collection if it exists.
+     *
+     * @param o is an object that is an entity. It needs to have a valid _id field.
+     * @return returns the original object passed in.
+     * If the id doesn't exist there is an IllegalArgumentException.
+     */
+    @Override
+    public T delete(T o) {
+        K id = getEntityId(o);
+        delete(id);
+        return o;
+    }
+
+
+    /**
+     * Delete a list of objects in the form of iterable from the collection if they exist. The entities are removed
+     * in chunks of {@code batchSize} using {@code {_id : {$in : [...]}}} queries. As when deleting the entities one
+     * by one, the entities preceding the first missing one are deleted, and the others are kept.
+     *
+     * @param iterable is an iterable of entities.
+     * @return the original iterable.
+     * @throws IllegalArgumentException if the id of one of the entities is not found.
+     */
+    @Override
+    public Iterable<T> delete(Iterable<T> iterable) {
+        List<K> ids = new ArrayList<>();
+        for (T entity : iterable) {
+            ids.add(getEntityId(entity));
+        }
+
+        Set<Object> removed = new HashSet<>();
+        for (List<K> chunk : Lists.partition(ids, batchSize)) {
+            Set<Object> existing = findExistingIds(chunk);
+            List<Object> toRemove = new ArrayList<>(chunk.size());
+            for (K id : chunk) {
+                Object key = toLookupKey(id);
+                if (!existing.contains(key) || !removed.add(key)) {
+                    removeIds(toRemove);
+                    throw new IllegalArgumentException("Unable to delete Id '" + id + "' not found");
+                }
+                toRemove.add(toDatabaseId(id));
+            }
+            removeIds(toRemove);
+        }
+        return iterable;
+    }
+
+    /**
+     * Delete the entities having the given ids. The ids are removed in chunks of {@code batchSize} using
+     * {@code {_id : {$in : [...]}}} queries. Missing ids are ignored.
+     *
+     * @param ids the ids of the entities to delete.
+     * @return the number of documents actually removed.
+     */
+    @Override
+    public long deleteAll(Iterable<K> ids) {
+        long count = 0;
+        for (List<K> chunk : Iterables.partition(ids, batchSize)) {
+            List<Object> toRemove = new ArrayList<>(chunk.size());
+            for (K id : chunk) {
+                Object dbId = toDatabaseId(id);
+                if (dbId != null) {
+                    toRemove.add(dbId);
+                }
+            }
+            count += removeIds(toRemove);
+        }
+        return count;
+    }
+
+    /**
+     * Retrieves, among the given ids, the ones matching a document. Only the {@code _id} field is transferred.
+     *
+     * @param ids the ids.
+     * @return the set of existing ids, normalized using {@link #toLookupKey(Object)}.
+     */
+    private Set<Object> findExistingIds(List<K> ids) {
+        List<Object> dbIds = new ArrayList<>(ids.size());
+        for (K id : ids) {
+            Object dbId = toDatabaseId(id);
+            if (dbId != null) {
+                dbIds.add(dbId);
+            }
+        }
+        Set<Object> existing = new HashSet<>();
+        if (dbIds.isEmpty()) {
+            return existing;
+        }
+        for (DBObject document : collection.getDBCollection().find(byIds(dbIds), ID_PROJECTION)) {
+            existing.add(toLookupKey(document.get(ID)));
+        }
+        return existing;
+    }
+
+    /**
+     * Removes the documents having the given ids in a single query.
+     *
+     * @param dbIds the ids, already converted using {@link #toDatabaseId(Serializable)}.
+     * @return the number of removed documents.
+     */
+    private int removeIds(List<Object> dbIds) {
+        if (dbIds.isEmpty()) {
+            return 0;
+        }
+        int count = collection.getDBCollection().remove(byIds(dbIds)).getN();
+        if (countCache != null) {
+            countCache.adjust(-count);
+        }
+        for (Object dbId : dbIds) {
+            invalidate(dbId);
+        }
+        return count;
+    }
+
+    /**
+     * Removes the document having the given id.
+     *
+     * @param dbId the id, already converted using {@link #toDatabaseId(Serializable)}.
+     * @return the number of removed documents.
+     */
+    private int remove(Object dbId) {
+        int count = collection.getDBCollection().remove(byId(dbId)).getN();
+        if (countCache != null) {
+            countCache.adjust(-count);
+        }
+        invalidate(dbId);
+        return count;
+    }
+
+    /**
+     * Evicts a document from the entity cache, if enabled, and bumps the collection version so cached query results
+     * are discarded. Must be called once the document has been written.
+     *
+     * @param id the id of the document, either as given by the entity or as stored in the database.
+     */
+    private void invalidate(Object id) {
+        collectionVersion.incrementAndGet();
+        if (id == null) {
+            return;
+        }
+        if (entityCache != null) {
+            entityCache.invalidate(toLookupKey(id));
+        }
+        if (missingIds != null) {
+            missingIds.present(toLookupKey(id));
+        }
+    }
+
+    /**
+     * Method provided by jongo to delete everything in the collection. Use with caution.
+     */
+    public void deleteAllFromCollection() {
+        collection.remove();
+        collectionVersion.incrementAndGet();
+        if (countCache != null) {
+            countCache.invalidate();
+        }
+        if (entityCache != null) {
+            entityCache.invalidateAll();
+        }
+    }
+
+    /**
+     * Checks to see if the object exists in the Mongo Collection based on its ID. Only the id is retrieved, the
+     * query is answered by the {@code _id} index. Ids known to be absent by the negative cache are not looked up.
+     *
+     * @param id of the object to search for.
+     * @return true if found false if not found.
+     */
+    @Override
+    public boolean exists(K id) {
+        Object dbId = toDatabaseId(id);
+        if (dbId == null) {
+            return false;
+        }
+        MissingIdCache absent = missingIds;
+        if (absent == null) {
+            return collection.getDBCollection().findOne(byId(dbId), ID_PROJECTION) != null;
+        }
+        Object key = toLookupKey(dbId);
+        if (isMissing(absent, key)) {
+            return false;
+        }
+        long generation = absent.generation();
+        boolean found = collection.getDBCollection().findOne(byId(dbId), ID_PROJECTION) != null;
+        if (!found) {
+            absent.missing(key, generation);
+        }
+        return found;
+    }
+
+
+    /**
+     * Count the number of objects that are of the entity type in a Mongo Collection. If the count cache is enabled,
+     * the count is only executed once the cached count has expired.
+     *
+     * @return count as type Long.
+     */
+    @Override
+    public long count() {
+        CountCache cache = countCache;
+        if (cache == null) {
+            return collection.count();
+        }
+        Long cached = cache.get();
+        if (cached != null) {
+            return cached;
+        }
+        long generation = cache.generation();
+        long count = collection.count();
+        cache.put(count, generation);
+        return count;
+    }
+
+    /**
+     * Count the number of objects in the Mongo Collection, bypassing the count cache.
+     *
+     * @return the number of objects.
+     */
+    @Override
+    public long exactCount() {
+        return collection.count();
+    }
+
+    /**
+     * Estimates the number of objects in the Mongo Collection from the collection statistics, without counting the
+     * documents. The estimate may be off after an unclean shutdown of the server, or on sharded clusters while chunks
+     * are migrated.
+     *
+     * @return the estimated number of objects, 0 if the collection does not exist.
+     */
+    @Override
+    public long estimatedCount() {
+        Object count = collection.getDBCollection().getStats().get("count");
+        return count instanceof Number ? ((Number) count).longValue() : 0;
+    }
+
+    /**
+     * Count the number of objects matching the given filter. {@link MongoFilter} and {@link QueryFilter} are counted
+     * by the database, without transferring any document. Other filters are evaluated on every entity of the
+     * collection.
+     *
+     * @param filter the filter.
+     * @return the number of matching objects.
+     */
+    @Override
+    public long count(EntityFilter<T> filter) {
+        EntityFilter<T> compiled = compile(filter);
+        if (compiled instanceof MongoFilter) {
+            MongoFilter<T> dbFilter = (MongoFilter<T>) compiled;
+            if (dbFilter.getOptions() == null) {
+                return collection.getDBCollection().count(toQuery(dbFilter));
+            }
+            try (DBCursor cursor = toCursorOptions(dbFilter).applyTo(collection.getDBCollection().find(
+                    toQuery(dbFilter)))) {
+                return cursor.size();
+            }
+        }
+        long count = 0;
+        for (T ignored : new FilteringIterable<>(collection, entityClass, compiled, batchSize)) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Creates the query from a Mongo filter. The query template is parsed once and kept in the shared
+     * {@link QueryTemplateCache}, only the parameters are bound on each call.
+     *
+     * @param filter the filter.
+     * @return the query.
+     */
+    private DBObject toQuery(MongoFilter<T> filter) {
+        return queryTemplates.bind(filter.getFilter(), filter.getParams(), mapper);
+    }
+
+    /**
+     * Creates the cursor options of a Mongo filter. The sort and the hint are parsed once and kept in the shared
+     * {@link QueryTemplateCache}.
+     *
+     * @param filter the filter.
+     * @return the cursor options.
+     */
+    private CursorOptions toCursorOptions(MongoFilter<T> filter) {
+        QueryOptions options = filter.getOptions();
+        if (options == null) {
+            return CursorOptions.NONE;
+        }
+        DBObject sort = options.getSort() == null ? null
+                : queryTemplates.bind(options.getSort(), new Object[0], mapper);
+        DBObject hint = options.getHint() == null ? null
+                : queryTemplates.bind(options.getHint(), new Object[0], mapper);
+        return new CursorOptions(options.getBatchSize(), options.getLimit(), options.getSkip(), sort, hint,
+                options.getMaxTimeMillis());
+    }
+
+    /**
+     * Finds the first document matching a Mongo filter, honouring its sort, skip and hint.
+     *
+     * @param filter     the filter.
+     * @param query      the query of the filter.
+     * @param projection the projection, {@code null} to retrieve all the fields.
+     * @return the document, {@code null} if none matches.
+     */
+    private DBObject findFirst(MongoFilter<T> filter, DBObject query, DBObject projection) {
+        if (filter.getOptions() == null) {
+            return findOneDocument(query, projection);
+        }
+        try (DBCursor cursor = toCursorOptions(filter).applyTo(find(query, projection)).limit(1)) {
+            return cursor.hasNext() ? cursor.next() : null;
+        }
+    }
+
+    /**
+     * Finds the documents matching a query. The documents are decoded as lazy BSON documents, which the
+     * unmarshaller reads as they are, instead of decoding them, encoding them again and decoding them a second time.
+     *
+     * @param query      the query.
+     * @param projection the projection, {@code null} to retrieve all the fields.
+     * @return the cursor.
+     */
+    private DBCursor find(DBObject query, DBObject projection) {
+        return collection.getDBCollection().find(query, projection).setDecoderFactory(BsonDBDecoder.FACTORY);
+    }
+
+    /**
+     * Finds the first document matching a query, as a lazy BSON document.
+     *
+     * @param query      the query.
+     * @param projection the projection, {@code null} to retrieve all the fields.
+     * @return the document, {@code null} if none matches.
+     */
+    private DBObject findOneDocument(DBObject query, DBObject projection) {
+        try (DBCursor cursor = find(query, projection).limit(1)) {
+            return cursor.hasNext() ? cursor.next() : null;
+        }
+    }
+
+    /**
+     * Creates the projection of a Mongo filter.
+     *
+     * @param filter the filter.
+     * @return the projection, {@code null} to retrieve all the fields.
+     */
+    private DBObject toProjection(MongoFilter<T> filter) {
+        if (filter.getProjection() == null) {
+            return null;
+        }
+        return queryTemplates.bind(filter.getProjection(), new Object[0], mapper);
+    }
+
+    /**
+     * Creates a projection retrieving the given fields.
+     *
+     * @param fields the fields.
+     * @return the projection, {@code null} to retrieve all the fields.
+     */
+    private static DBObject toProjection(String... fields) {
+        if (fields == null || fields.length == 0) {
+            return null;
+        }
+        BasicDBObject projection = new BasicDBObject();
+        for (String field : fields) {
+            projection.put(field, 1);
+        }
+        return projection;
+    }
+
+    /**
+     * Creates the query selecting a document by id.
+     *
+     * @param dbId the id, already converted using {@link #toDatabaseId(Serializable)}.
+     * @return the query.
+     */
+    private static DBObject byId(Object dbId) {
+        return new BasicDBObject(ID, dbId);
+    }
+
+    /**
+     * Creates the query selecting documents by ids.
+     *
+     * @param dbIds the ids, already converted using {@link #toDatabaseId(Serializable)}.
+     * @return the query.
+     */
+    private static DBObject byIds(List<Object> dbIds) {
+        return new BasicDBObject(ID, new BasicDBObject("$in", dbIds));
+    }
+
+    private T unmarshall(DBObject document) {
+        return unmarshall(document, entityClass);
+    }
 
+    private <P> P unmarshall(DBObject document, Class<P> type) {
+        return mapper.getUnmarshaller().unmarshall(Bson.createDocument(document), type);
     }
 
     /**
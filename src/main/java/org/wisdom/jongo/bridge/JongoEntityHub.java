@@ -71,22 +71,57 @@ public class JongoEntityHub {
         for (String key : jongoConfiguration.asMap().keySet()) {
             // The key is the database name
             LOGGER.info("Create repository for {}", key);
-            createRepositoryInstance(key, jongoConfiguration.getList(key + ".entities"));
+            createRepositoryInstance(key, jongoConfiguration.getConfiguration(key));
         }
     }
 
     /**
      * Create the repository instance.
      * @param name the key in the config file used to identify the data source.
-     * @param entities a list of entities that will use this repository.
+     * @param database the configuration of the repository, containing the list of entities that will use this
+     *                 repository and the optional tuning settings.
      * @throws UnacceptableConfiguration
      * @throws MissingHandlerException
      * @throws ConfigurationException
      */
-    private void createRepositoryInstance(String name, List<String> entities) throws UnacceptableConfiguration, MissingHandlerException,
-            ConfigurationException {
+    private void createRepositoryInstance(String name, Configuration database)
+            throws UnacceptableConfiguration, MissingHandlerException, ConfigurationException {
         Dictionary<String, Object> conf = new Hashtable<>();
-        conf.put("entities", entities);
+        conf.put("entities", database.getList("entities"));
+        conf.put("batchSize", database.getIntegerWithDefault("batch-size", JongoCRUDService.DEFAULT_BATCH_SIZE));
+        conf.put("filterParallelism", database.getIntegerWithDefault("filter-parallelism", 0));
+        List<String> cachedEntities = database.getList("cache.entities");
+        if (cachedEntities != null) {
+            conf.put("cachedEntities", cachedEntities);
+        }
+        conf.put("cacheMaximumSize", database.getLongWithDefault("cache.maximum-size", 10000L));
+        conf.put("cacheTtl", database.getLongWithDefault("cache.ttl", 600L));
+        List<String> queryCachedEntities = database.getList("query-cache.entities");
+        if (queryCachedEntities != null) {
+            conf.put("queryCachedEntities", queryCachedEntities);
+        }
+        conf.put("queryCacheMaximumSize", database.getLongWithDefault("query-cache.maximum-size", 1000L));
+        conf.put("queryCacheMaximumResultSize",
+                database.getIntegerWithDefault("query-cache.maximum-result-size", 1000));
+        conf.put("queryCacheMaxStaleness", database.getLongWithDefault("query-cache.max-staleness", 0L));
+        List<String> missingIdCachedEntities = database.getList("missing-id-cache.entities");
+        if (missingIdCachedEntities != null) {
+            conf.put("missingIdCachedEntities", missingIdCachedEntities);
+        }
+        conf.put("missingIdCacheMaximumSize", database.getLongWithDefault("missing-id-cache.maximum-size", 100000L));
+        conf.put("missingIdCacheTtl", database.getLongWithDefault("missing-id-cache.ttl", 60L));
+        conf.put("missingIdBloomFilter", database.getBooleanWithDefault("missing-id-cache.bloom-filter", false));
+        conf.put("missingIdBloomFilterFpp",
+                Double.parseDouble(database.getWithDefault("missing-id-cache.bloom-filter-fpp", "0.01")));
+        conf.put("missingIdBloomFilterTtl", database.getLongWithDefault("missing-id-cache.bloom-filter-ttl", 600L));
+        List<String> countCachedEntities = database.getList("count-cache.entities");
+        if (countCachedEntities != null) {
+            conf.put("countCachedEntities", countCachedEntities);
+        }
+        conf.put("countCacheTtl", database.getLongWithDefault("count-cache.ttl", 5L));
+        conf.put("asyncThreads", database.getIntegerWithDefault("async.threads", 16));
+        conf.put("asyncQueueSize", database.getIntegerWithDefault("async.queue-size", 1000));
+        conf.put("asyncMode", database.getWithDefault("async.mode", "pool"));
         Dictionary<String, String> filter = new Hashtable<>();
         filter.put("database", "(|(name=" + name + ")(datasources= " + name + "))");
         conf.put("requires.filters", filter);
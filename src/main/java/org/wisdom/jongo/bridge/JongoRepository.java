@@ -19,9 +19,8 @@
  */
 package org.wisdom.jongo.bridge;
 
-import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.mongodb.DB;
-import org.apache.commons.lang3.ClassUtils;
 import org.apache.commons.lang3.reflect.TypeUtils;
 import org.apache.felix.ipojo.annotations.*;
 import org.osgi.framework.Bundle;
@@ -34,9 +33,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.wisdom.api.model.Crud;
 import org.wisdom.api.model.Repository;
+import org.wisdom.jongo.service.AsyncJongoCRUD;
 
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -54,11 +58,118 @@ public class JongoRepository implements Repository<DB>,
     @Property(name = "entities", mandatory = true)
     private List<String> entities;
 
+    @Property(name = "batchSize", value = "1000")
+    private int batchSize;
+
+    @Property(name = "filterParallelism", value = "0")
+    private int filterParallelism;
+
+    /**
+     * The entities whose Crud service caches the documents retrieved by id.
+     */
+    @Property(name = "cachedEntities")
+    private List<String> cachedEntities;
+
+    @Property(name = "cacheMaximumSize", value = "10000")
+    private long cacheMaximumSize;
+
+    /**
+     * The time-to-live of the cached documents in seconds.
+     */
+    @Property(name = "cacheTtl", value = "600")
+    private long cacheTtl;
+
+    /**
+     * The entities whose Crud service caches the results of the Mongo filters.
+     */
+    @Property(name = "queryCachedEntities")
+    private List<String> queryCachedEntities;
+
+    @Property(name = "queryCacheMaximumSize", value = "1000")
+    private long queryCacheMaximumSize;
+
+    @Property(name = "queryCacheMaximumResultSize", value = "1000")
+    private int queryCacheMaximumResultSize;
+
+    /**
+     * The max staleness of the cached results in milliseconds, 0 to discard them on every write.
+     */
+    @Property(name = "queryCacheMaxStaleness", value = "0")
+    private long queryCacheMaxStaleness;
+
+    /**
+     * The entities whose Crud service caches the ids not found by findOne and exists.
+     */
+    @Property(name = "missingIdCachedEntities")
+    private List<String> missingIdCachedEntities;
+
+    @Property(name = "missingIdCacheMaximumSize", value = "100000")
+    private long missingIdCacheMaximumSize;
+
+    /**
+     * The time-to-live of the missing ids in seconds.
+     */
+    @Property(name = "missingIdCacheTtl", value = "60")
+    private long missingIdCacheTtl;
+
+    /**
+     * Whether a Bloom filter of the present ids is built in the background when the Crud service is created. Only
+     * valid if this application instance is the single writer of the collection.
+     */
+    @Property(name = "missingIdBloomFilter", value = "false")
+    private boolean missingIdBloomFilter;
+
+    @Property(name = "missingIdBloomFilterFpp", value = "0.01")
+    private double missingIdBloomFilterFpp;
+
+    /**
+     * The time-to-live of the Bloom filters of the present ids in seconds, they are then rebuilt.
+     */
+    @Property(name = "missingIdBloomFilterTtl", value = "600")
+    private long missingIdBloomFilterTtl;
+
+    /**
+     * The entities whose Crud service caches the result of count().
+     */
+    @Property(name = "countCachedEntities")
+    private List<String> countCachedEntities;
+
+    /**
+     * The time-to-live of the cached counts in seconds.
+     */
+    @Property(name = "countCacheTtl", value = "5")
+    private long countCacheTtl;
+
+    /**
+     * The number of threads running the operations of the asynchronous Crud services.
+     */
+    @Property(name = "asyncThreads", value = "16")
+    private int asyncThreads;
+
+    /**
+     * The maximum number of asynchronous operations waiting for a thread, further operations are rejected.
+     */
+    @Property(name = "asyncQueueSize", value = "1000")
+    private int asyncQueueSize;
+
+    /**
+     * The execution mode of the asynchronous Crud services, {@code pool} or {@code virtual}. In virtual mode, a
+     * virtual thread is used per operation, and the number of threads is the maximum number of concurrent operations.
+     */
+    @Property(name = "asyncMode", value = "pool")
+    private String asyncMode;
+
     @Context
     private BundleContext context;
 
     private BundleTracker<List<InstantiatedCrud>> tracker;
 
+    private ForkJoinPool filterPool;
+
+    private CrudExecutor asyncExecutor;
+
+    private ExecutorService bloomFilterExecutor;
+
     /**
      *
      */
@@ -67,6 +178,10 @@ public class JongoRepository implements Repository<DB>,
         LOGGER.info("Starting Jongo Repository for {}", database.getName());
         LOGGER.info("Listed entities: {}", entities);
 
+        filterPool = filterParallelism > 0 ? new ForkJoinPool(filterParallelism) : new ForkJoinPool();
+        asyncExecutor = createAsyncExecutor();
+        bloomFilterExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("jongo-" + database.getName() + "-bloom-filter-%d").setDaemon(true).build());
         tracker = new BundleTracker<>(context, Bundle.ACTIVE, this);
         tracker.open();
     }
@@ -86,8 +201,65 @@ public class JongoRepository implements Repository<DB>,
         for (Map.Entry<Bundle, List<InstantiatedCrud>> entry : map.entrySet()) {
             for (InstantiatedCrud c : entry.getValue()) {
                 c.unregister();
+                // Do not retain the entity classes of this repository once stopped, the registry is shared
+                EntityMetadata.evict(c.clazz);
             }
         }
+        if (filterPool != null) {
+            filterPool.shutdownNow();
+            filterPool = null;
+        }
+        if (asyncExecutor != null) {
+            asyncExecutor.shutdown();
+            asyncExecutor = null;
+        }
+        if (bloomFilterExecutor != null) {
+            bloomFilterExecutor.shutdownNow();
+            bloomFilterExecutor = null;
+        }
+    }
+
+    private CrudExecutor createAsyncExecutor() {
+        if (CrudExecutor.Mode.VIRTUAL.name().equalsIgnoreCase(asyncMode)) {
+            CrudExecutor executor = CrudExecutor.virtual(asyncThreads, asyncQueueSize);
+            if (executor != null) {
+                LOGGER.info("Asynchronous Jongo operations run on virtual threads (concurrency: {})", asyncThreads);
+                if (pinsCarrierInMonitors()) {
+                    LOGGER.warn("Virtual threads pin their carrier while the driver blocks in synchronized blocks on "
+                            + "this JVM, set -Djdk.virtualThreadScheduler.parallelism to at least {} or use the pool "
+                            + "mode", asyncThreads);
+                }
+                return executor;
+            }
+            LOGGER.warn("Virtual threads are not supported by this JVM, asynchronous Jongo operations run on a pool "
+                    + "of {} threads", asyncThreads);
+        }
+        return new CrudExecutor(database.getName(), asyncThreads, asyncQueueSize);
+    }
+
+    /**
+     * Checks whether the virtual threads pin their carrier thread when blocking inside a {@code synchronized} block,
+     * which is the case before Java 24.
+     *
+     * @return {@code true} if the virtual threads pin their carrier in monitors.
+     */
+    private static boolean pinsCarrierInMonitors() {
+        String version = System.getProperty("java.specification.version", "");
+        try {
+            return Integer.parseInt(version) < 24;
+        } catch (NumberFormatException e) {
+            // 1.x versions do not support virtual threads at all
+            return true;
+        }
+    }
+
+    /**
+     * Gets the executor running the operations of the asynchronous Crud services, to monitor its queue.
+     *
+     * @return the executor.
+     */
+    public CrudExecutor getAsyncExecutor() {
+        return asyncExecutor;
     }
 
     /**
@@ -162,7 +334,32 @@ public class JongoRepository implements Repository<DB>,
                 Class clazz = load(bundle, entity);
                 if (clazz != null) {
                     JongoCRUDService crud = new JongoCRUDService(clazz, database);
-                    InstantiatedCrud ic = new InstantiatedCrud(bundle, crud, entity);
+                    crud.setBatchSize(batchSize);
+                    crud.setFilterPool(filterPool);
+                    if (cachedEntities != null && cachedEntities.contains(entity)) {
+                        LOGGER.info("Enable the cache of {} (size: {}, ttl: {}s)", entity, cacheMaximumSize, cacheTtl);
+                        crud.enableCache(cacheMaximumSize, cacheTtl, TimeUnit.SECONDS);
+                    }
+                    if (queryCachedEntities != null && queryCachedEntities.contains(entity)) {
+                        LOGGER.info("Enable the query cache of {} (size: {}, max staleness: {}ms)", entity,
+                                queryCacheMaximumSize, queryCacheMaxStaleness);
+                        crud.enableQueryCache(queryCacheMaximumSize, queryCacheMaximumResultSize,
+                                queryCacheMaxStaleness, TimeUnit.MILLISECONDS);
+                    }
+                    if (missingIdCachedEntities != null && missingIdCachedEntities.contains(entity)) {
+                        LOGGER.info("Enable the missing id cache of {} (size: {}, ttl: {}s, bloom filter: {})", entity,
+                                missingIdCacheMaximumSize, missingIdCacheTtl, missingIdBloomFilter);
+                        crud.enableMissingIdCache(missingIdCacheMaximumSize, missingIdCacheTtl, TimeUnit.SECONDS);
+                        if (missingIdBloomFilter) {
+                            crud.enableMissingIdBloomFilter(missingIdBloomFilterFpp, missingIdBloomFilterTtl,
+                                    TimeUnit.SECONDS, bloomFilterExecutor);
+                        }
+                    }
+                    if (countCachedEntities != null && countCachedEntities.contains(entity)) {
+                        LOGGER.info("Enable the count cache of {} (ttl: {}s)", entity, countCacheTtl);
+                        crud.enableCountCache(countCacheTtl, TimeUnit.SECONDS);
+                    }
+                    InstantiatedCrud ic = new InstantiatedCrud(clazz, crud);
                     list.add(ic);
                 }
 
@@ -212,6 +409,8 @@ public class JongoRepository implements Repository<DB>,
     public void removedBundle(Bundle bundle, BundleEvent event, List<InstantiatedCrud> object) {
         for (InstantiatedCrud c : object) {
             c.unregister();
+            // The bundle is going away, do not retain its classes
+            EntityMetadata.evict(c.clazz);
         }
     }
 
@@ -219,16 +418,15 @@ public class JongoRepository implements Repository<DB>,
      *
      */
     class InstantiatedCrud {
-        private String entity;
-        private Bundle bundle;
+        private Class clazz;
         private JongoCRUDService crud;
 
         private ServiceRegistration registration;
+        private ServiceRegistration asyncRegistration;
 
-        public InstantiatedCrud(Bundle bundle, JongoCRUDService crud, String entity) {
-            this.bundle = bundle;
+        public InstantiatedCrud(Class clazz, JongoCRUDService crud) {
+            this.clazz = clazz;
             this.crud = crud;
-            this.entity = entity;
         }
 
         public void unregister() {
@@ -236,14 +434,16 @@ public class JongoRepository implements Repository<DB>,
                 registration.unregister();
                 registration = null;
             }
+            if (asyncRegistration != null) {
+                asyncRegistration.unregister();
+                asyncRegistration = null;
+            }
         }
 
         public void register() {
             crud.setRepository(JongoRepository.this);
             Dictionary<String, Object> properties = new Hashtable<>();
-            final Class clazz = load(bundle, entity);
-            final Iterable<Class<?>> classes = ClassUtils.hierarchy(clazz, ClassUtils.Interfaces.INCLUDE);
-            Class[] implemented = Iterables.toArray(classes, Class.class);
+            Class[] implemented = EntityMetadata.of(clazz).getHierarchy();
             String[] classNames = new String[implemented.length];
             int i = 0;
             for (Class c : implemented) {
@@ -253,6 +453,8 @@ public class JongoRepository implements Repository<DB>,
             properties.put(Crud.ENTITY_CLASS_PROPERTY, implemented);
             properties.put(Crud.ENTITY_CLASSNAME_PROPERTY, classNames);
             registration = context.registerService(Crud.class, crud, properties);
+            asyncRegistration = context.registerService(AsyncJongoCRUD.class,
+                    new AsyncJongoCRUDService(crud, asyncExecutor), properties);
         }
     }
 }
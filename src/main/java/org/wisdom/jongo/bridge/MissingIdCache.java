@@ -0,0 +1,253 @@
+/*
+ * #%L
+ * Wisdom-Framework
+ * %%
+ * Copyright (C) 2015 Wisdom Framework
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.wisdom.jongo.bridge;
+
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.PrimitiveSink;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A negative cache of the ids known to be absent from the collection, answering {@code findOne(id)} and
+ * {@code exists(id)} without a round trip to the database.
+ * <p>
+ * Ids are cached once a lookup did not find them, and are removed when the Crud service writes them. Optionally, a
+ * Bloom filter of the ids present in the collection is built from the {@code _id} index and updated on each write:
+ * ids the filter has never seen are reported absent, even if they were never looked up.
+ * <p>
+ * The Bloom filter only sees the writes made through the Crud services of this JVM: it must only be enabled if this
+ * application instance is the single writer of the collection. To bound the damage of a write made by other means,
+ * the filter expires after a time-to-live, and is also not used once the ids added since it was built raise its
+ * false positive probability above twice the desired one. Lookups are answered by the database until a new filter is
+ * built, see {@link #bloomFilterExpired()}.
+ * <p>
+ * As for the {@link EntityCache}, lookups racing with a write are not cached: each write bumps a generation number, and
+ * absences observed under a previous generation are dropped.
+ */
+public final class MissingIdCache {
+
+    private final Cache<Object, Boolean> missing;
+    private final AtomicLong generation = new AtomicLong();
+    private volatile BloomFilter<Object> present;
+    private volatile long presentBuildTime;
+    private volatile BloomFilter<Object> pending;
+    private final AtomicBoolean building = new AtomicBoolean();
+    private volatile double bloomFilterFpp;
+    private volatile long bloomFilterTtl;
+    private final AtomicLong bloomFilterHitCount = new AtomicLong();
+
+    /**
+     * Creates the cache.
+     *
+     * @param maximumSize the maximum number of missing ids.
+     * @param ttl         the time-to-live of the missing ids, 0 to keep them until evicted or written.
+     * @param unit        the unit of the time-to-live.
+     */
+    MissingIdCache(long maximumSize, long ttl, TimeUnit unit) {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats();
+        if (ttl > 0) {
+            builder.expireAfterWrite(ttl, unit);
+        }
+        missing = builder.build();
+    }
+
+    /**
+     * Starts building a Bloom filter of the present ids, unless one is already being built. The ids of the collection
+     * must then be added using {@link #seed(Object)}, and the filter is used once {@link #bloomFilterReady()} is
+     * called. Ids written in the meantime are added to the filter being built. The current filter, if any, is used
+     * until then.
+     *
+     * @param expectedInsertions the expected number of ids.
+     * @param fpp                the desired false positive probability.
+     * @param ttl                the time-to-live of the filter, 0 to keep it until it is too full.
+     * @param unit               the unit of the time-to-live.
+     * @return {@code true} if the build is started, {@code false} if another build is in progress.
+     */
+    boolean startBloomFilter(long expectedInsertions, double fpp, long ttl, TimeUnit unit) {
+        if (!building.compareAndSet(false, true)) {
+            return false;
+        }
+        bloomFilterFpp = fpp;
+        bloomFilterTtl = unit.toNanos(ttl);
+        pending = BloomFilter.create(KeyFunnel.INSTANCE, (int) Math.min(expectedInsertions, Integer.MAX_VALUE), fpp);
+        return true;
+    }
+
+    /**
+     * Adds an id read from the collection to the Bloom filter being built.
+     *
+     * @param key the normalized id.
+     */
+    void seed(Object key) {
+        put(pending, key);
+    }
+
+    /**
+     * Starts using the Bloom filter built since {@link #startBloomFilter(long, double)}.
+     */
+    void bloomFilterReady() {
+        presentBuildTime = System.nanoTime();
+        present = pending;
+        pending = null;
+        building.set(false);
+    }
+
+    /**
+     * Abandons the Bloom filter being built, the current filter, if any, is kept.
+     */
+    void bloomFilterFailed() {
+        pending = null;
+        building.set(false);
+    }
+
+    /**
+     * Checks whether the Bloom filter must be rebuilt: it has expired or is too full, and no build is in progress.
+     * Lookups are answered by the database in the meantime.
+     *
+     * @return {@code true} if a new filter must be built.
+     */
+    boolean bloomFilterExpired() {
+        BloomFilter<Object> filter = present;
+        return filter != null && !building.get() && !usable(filter);
+    }
+
+    private boolean usable(BloomFilter<Object> filter) {
+        long ttl = bloomFilterTtl;
+        if (ttl > 0 && System.nanoTime() - presentBuildTime > ttl) {
+            return false;
+        }
+        synchronized (filter) {
+            return filter.expectedFpp() <= 2 * bloomFilterFpp;
+        }
+    }
+
+    private static void put(BloomFilter<Object> filter, Object key) {
+        if (filter != null) {
+            synchronized (filter) {
+                filter.put(key);
+            }
+        }
+    }
+
+    /**
+     * @return the current generation, to pass to {@link #missing(Object, long)} once the lookup is done.
+     */
+    long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Checks whether an id is known to be absent.
+     *
+     * @param key the normalized id.
+     * @return {@code true} if the id is definitely absent, {@code false} if it may be present.
+     */
+    boolean isMissing(Object key) {
+        BloomFilter<Object> filter = present;
+        if (filter != null && usable(filter)) {
+            boolean mightContain;
+            synchronized (filter) {
+                mightContain = filter.mightContain(key);
+            }
+            if (!mightContain) {
+                bloomFilterHitCount.incrementAndGet();
+                return true;
+            }
+        }
+        return missing.getIfPresent(key) != null;
+    }
+
+    /**
+     * Records an id not found by a lookup, unless a write happened during the lookup.
+     *
+     * @param key        the normalized id.
+     * @param generation the generation read before the lookup.
+     */
+    void missing(Object key, long generation) {
+        missing.put(key, Boolean.TRUE);
+        if (this.generation.get() != generation) {
+            missing.invalidate(key);
+        }
+    }
+
+    /**
+     * Records an id that has been written, and may now be present.
+     *
+     * @param key the normalized id.
+     */
+    void present(Object key) {
+        put(pending, key);
+        put(present, key);
+        generation.incrementAndGet();
+        missing.invalidate(key);
+    }
+
+    /**
+     * @return the number of lookups answered by the negative entries.
+     */
+    public long getHitCount() {
+        return missing.stats().hitCount();
+    }
+
+    /**
+     * @return the number of lookups answered by the Bloom filter.
+     */
+    public long getBloomFilterHitCount() {
+        return bloomFilterHitCount.get();
+    }
+
+    /**
+     * @return the false positive probability of the Bloom filter given the ids added so far, 0 if not used.
+     */
+    public double getBloomFilterFpp() {
+        BloomFilter<Object> filter = present;
+        if (filter == null) {
+            return 0;
+        }
+        synchronized (filter) {
+            return filter.expectedFpp();
+        }
+    }
+
+    /**
+     * @return the number of negative entries.
+     */
+    public long size() {
+        return missing.size();
+    }
+
+    /**
+     * Funnels the normalized ids, which are either strings or longs, in the Bloom filter.
+     */
+    private enum KeyFunnel implements Funnel<Object> {
+        INSTANCE;
+
+        @Override
+        public void funnel(Object key, PrimitiveSink into) {
+            into.putBytes(key.toString().getBytes(Charsets.UTF_8));
+        }
+    }
+}
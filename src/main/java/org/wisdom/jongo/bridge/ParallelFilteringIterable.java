@@ -0,0 +1,245 @@
+/*
+ * #%L
+ * Wisdom-Framework
+ * %%
+ * Copyright (C) 2015 Wisdom Framework
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.wisdom.jongo.bridge;
+
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import org.jongo.Mapper;
+import org.jongo.MongoCollection;
+import org.jongo.bson.Bson;
+import org.jongo.bson.BsonDBDecoder;
+import org.wisdom.api.model.EntityFilter;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A lazy iterable evaluating an {@link EntityFilter} in the JVM on a {@link ForkJoinPool}. The iterating thread reads
+ * the raw documents from the cursor by batch and submits each batch to the pool, which deserializes and filters it in
+ * parallel. While a batch is processed, the iterating thread fetches the next one.
+ * <p>
+ * Results are returned either in cursor order, or in the order in which batches complete. The filter must be
+ * thread-safe. Callers stopping the iteration early should {@link #close()} the iterable to release the server
+ * cursors.
+ *
+ * @param <T> the entity class.
+ */
+class ParallelFilteringIterable<T> implements Iterable<T>, Closeable {
+
+    /**
+     * The number of batches submitted to the pool and not yet consumed.
+     */
+    private static final int IN_FLIGHT_BATCHES = 2;
+
+    /**
+     * Below this number of documents, a batch is processed sequentially.
+     */
+    private static final int SEQUENTIAL_THRESHOLD = 64;
+
+    private final MongoCollection collection;
+    private final Mapper mapper;
+    private final Class<T> entityClass;
+    private final EntityFilter<T> filter;
+    private final int batchSize;
+    private final ForkJoinPool pool;
+    private final boolean ordered;
+
+    private final Set<ParallelFilteringIterator> iterators =
+            Collections.newSetFromMap(new ConcurrentHashMap<ParallelFilteringIterator, Boolean>());
+
+    ParallelFilteringIterable(MongoCollection collection, Mapper mapper, Class<T> entityClass,
+                              EntityFilter<T> filter, int batchSize, ForkJoinPool pool, boolean ordered) {
+        this.collection = collection;
+        this.mapper = mapper;
+        this.entityClass = entityClass;
+        this.filter = filter;
+        this.batchSize = batchSize;
+        this.pool = pool;
+        this.ordered = ordered;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        // documents are decoded lazily, the tasks unmarshall them without encoding them again
+        ParallelFilteringIterator iterator = new ParallelFilteringIterator(collection.getDBCollection().find()
+                .batchSize(batchSize).setDecoderFactory(BsonDBDecoder.FACTORY));
+        iterators.add(iterator);
+        return iterator;
+    }
+
+    /**
+     * Closes the cursors still opened by the iterators. This method can be called from any thread: the pending
+     * batches of an iterator are only cancelled by the thread iterating on it, on its next call.
+     */
+    @Override
+    public void close() {
+        for (ParallelFilteringIterator iterator : iterators) {
+            iterator.close();
+        }
+    }
+
+    private class ParallelFilteringIterator implements Iterator<T> {
+
+        private final DBCursor cursor;
+        // only accessed by the iterating thread
+        private final Deque<ForkJoinTask<List<T>>> pending = new ArrayDeque<>();
+        private Iterator<T> current = Collections.<T>emptyList().iterator();
+        private volatile boolean closed;
+
+        private ParallelFilteringIterator(DBCursor cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (closed) {
+                    release();
+                    return false;
+                }
+                try {
+                    submitBatches();
+                    if (pending.isEmpty()) {
+                        release();
+                        return false;
+                    }
+                    current = nextBatch().join().iterator();
+                } catch (RuntimeException | Error e) {
+                    // the cursor fails once closed by another thread, the iteration just ends
+                    boolean closedElsewhere = closed;
+                    // a failing filter or cursor releases the server cursor and the other batches
+                    release();
+                    if (closedElsewhere && e instanceof RuntimeException) {
+                        return false;
+                    }
+                    throw e;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Reads batches from the cursor until enough batches are in flight.
+         */
+        private void submitBatches() {
+            while (pending.size() < IN_FLIGHT_BATCHES && cursor.hasNext()) {
+                List<DBObject> batch = new ArrayList<>(batchSize);
+                while (batch.size() < batchSize && cursor.hasNext()) {
+                    batch.add(cursor.next());
+                }
+                pending.add(pool.submit(new FilterTask(batch, 0, batch.size())));
+            }
+        }
+
+        private ForkJoinTask<List<T>> nextBatch() {
+            if (!ordered) {
+                for (Iterator<ForkJoinTask<List<T>>> it = pending.iterator(); it.hasNext(); ) {
+                    ForkJoinTask<List<T>> task = it.next();
+                    if (task.isDone()) {
+                        it.remove();
+                        return task;
+                    }
+                }
+            }
+            return pending.poll();
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Cannot remove an entity from a filtered result");
+        }
+
+        /**
+         * Closes the cursor, from any thread. The pending batches are left to the iterating thread.
+         */
+        private void close() {
+            closed = true;
+            iterators.remove(this);
+            cursor.close();
+        }
+
+        /**
+         * Closes the cursor and cancels the pending batches, from the iterating thread only.
+         */
+        private void release() {
+            close();
+            for (ForkJoinTask<List<T>> task : pending) {
+                task.cancel(false);
+            }
+            pending.clear();
+        }
+    }
+
+    /**
+     * Deserializes and filters a range of a batch, splitting it until it is small enough.
+     */
+    private class FilterTask extends RecursiveTask<List<T>> {
+
+        private final List<DBObject> documents;
+        private final int from;
+        private final int to;
+
+        private FilterTask(List<DBObject> documents, int from, int to) {
+            this.documents = documents;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<T> compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                List<T> accepted = new ArrayList<>();
+                for (int i = from; i < to; i++) {
+                    T entity = mapper.getUnmarshaller().unmarshall(Bson.createDocument(documents.get(i)), entityClass);
+                    if (filter.accept(entity)) {
+                        accepted.add(entity);
+                    }
+                }
+                return accepted;
+            }
+            int middle = (from + to) >>> 1;
+            FilterTask left = new FilterTask(documents, from, middle);
+            left.fork();
+            List<T> right = new FilterTask(documents, middle, to).compute();
+            List<T> result = left.join();
+            result.addAll(right);
+            return result;
+        }
+    }
+}
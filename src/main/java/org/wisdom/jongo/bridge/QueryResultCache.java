@@ -0,0 +1,253 @@
+/*
+ * #%L
+ * Wisdom-Framework
+ * %%
+ * Copyright (C) 2015 Wisdom Framework
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.wisdom.jongo.bridge;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mongodb.DBEncoder;
+import com.mongodb.DBObject;
+import com.mongodb.DefaultDBEncoder;
+import org.bson.io.BasicOutputBuffer;
+import org.wisdom.jongo.service.QueryOptions;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of the documents returned by {@link org.wisdom.jongo.service.MongoFilter} queries, keyed by the bound
+ * query, the projection and the cursor options. The bound query is encoded to BSON when the key is created, so
+ * parameters mutated by the caller afterwards do not alter the key, and parameters without value equality still
+ * match.
+ * <p>
+ * Each collection has a version number, bumped by every write made through a Jongo Crud service. An entry is only
+ * returned if the collection has not been modified since the query was executed. In max-staleness mode, entries
+ * younger than the max staleness are returned even if the collection has been modified, which suits read-mostly
+ * collections.
+ */
+public final class QueryResultCache {
+
+    private static final ConcurrentMap<String, AtomicLong> VERSIONS = new ConcurrentHashMap<>();
+
+    private final Cache<Key, Entry> results;
+    private final AtomicLong version;
+    private final long maxStaleness;
+    private final int maxResultSize;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong staleHitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Creates the cache.
+     *
+     * @param version       the version of the collection.
+     * @param maximumSize   the maximum number of cached results.
+     * @param maxResultSize the maximum number of documents of a cached result, larger results are not cached.
+     * @param maxStaleness  the max staleness, 0 to never return results older than the last write.
+     * @param unit          the unit of the max staleness.
+     */
+    QueryResultCache(AtomicLong version, long maximumSize, int maxResultSize, long maxStaleness, TimeUnit unit) {
+        this.version = version;
+        this.results = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+        this.maxResultSize = maxResultSize;
+        this.maxStaleness = unit.toNanos(maxStaleness);
+    }
+
+    /**
+     * Gets the version counter of a collection, shared by all the Crud services using this collection.
+     *
+     * @param database   the database name.
+     * @param collection the collection name.
+     * @return the version counter.
+     */
+    static AtomicLong collectionVersion(String database, String collection) {
+        String name = database + "." + collection;
+        AtomicLong version = VERSIONS.get(name);
+        if (version == null) {
+            version = new AtomicLong();
+            AtomicLong existing = VERSIONS.putIfAbsent(name, version);
+            if (existing != null) {
+                version = existing;
+            }
+        }
+        return version;
+    }
+
+    /**
+     * Creates the key of a query.
+     *
+     * @param single     whether the query retrieves a single document.
+     * @param query      the query, with its parameters bound.
+     * @param projection the projection, {@code null} if none.
+     * @param options    the cursor options, {@code null} if none.
+     * @return the key.
+     */
+    static Key key(boolean single, DBObject query, DBObject projection, QueryOptions options) {
+        DBEncoder encoder = DefaultDBEncoder.FACTORY.create();
+        return new Key(single, encode(encoder, query), projection == null ? null : encode(encoder, projection),
+                options);
+    }
+
+    private static byte[] encode(DBEncoder encoder, DBObject document) {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        encoder.writeObject(buffer, document);
+        return buffer.toByteArray();
+    }
+
+    /**
+     * @return the current version of the collection, to pass to {@link #put(Key, List, long)} once the query is
+     * executed.
+     */
+    long version() {
+        return version.get();
+    }
+
+    /**
+     * @return the maximum number of documents of a cached result.
+     */
+    int getMaxResultSize() {
+        return maxResultSize;
+    }
+
+    /**
+     * Gets the cached result of a query.
+     *
+     * @param key the key.
+     * @return the documents, {@code null} if not cached or out of date.
+     */
+    List<DBObject> get(Key key) {
+        Entry entry = results.getIfPresent(key);
+        if (entry != null) {
+            if (entry.version == version.get()) {
+                hitCount.incrementAndGet();
+                return entry.documents;
+            }
+            if (maxStaleness > 0 && System.nanoTime() - entry.time <= maxStaleness) {
+                staleHitCount.incrementAndGet();
+                return entry.documents;
+            }
+            results.invalidate(key);
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Caches the result of a query.
+     *
+     * @param key       the key.
+     * @param documents the documents.
+     * @param version   the version of the collection read before executing the query.
+     */
+    void put(Key key, List<DBObject> documents, long version) {
+        if (documents.size() <= maxResultSize) {
+            results.put(key, new Entry(documents, version, System.nanoTime()));
+        }
+    }
+
+    /**
+     * @return the number of queries answered by an up to date result.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of queries answered by a result older than the last write, in max-staleness mode.
+     */
+    public long getStaleHitCount() {
+        return staleHitCount.get();
+    }
+
+    /**
+     * @return the number of queries executed by the database.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return the number of results evicted because the cache was full.
+     */
+    public long getEvictionCount() {
+        return results.stats().evictionCount();
+    }
+
+    /**
+     * @return the number of cached results.
+     */
+    public long size() {
+        return results.size();
+    }
+
+    private static final class Entry {
+        private final List<DBObject> documents;
+        private final long version;
+        private final long time;
+
+        private Entry(List<DBObject> documents, long version, long time) {
+            this.documents = documents;
+            this.version = version;
+            this.time = time;
+        }
+    }
+
+    /**
+     * The key of a query. The query and the projection are compared by their BSON encoding.
+     */
+    static final class Key {
+        private final boolean single;
+        private final byte[] query;
+        private final byte[] projection;
+        private final QueryOptions options;
+        private final int hash;
+
+        private Key(boolean single, byte[] query, byte[] projection, QueryOptions options) {
+            this.single = single;
+            this.query = query;
+            this.projection = projection;
+            this.options = options;
+            this.hash = Arrays.deepHashCode(new Object[] {single, query, projection, options});
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return single == other.single && Arrays.equals(query, other.query)
+                    && Arrays.equals(projection, other.projection)
+                    && (options == null ? other.options == null : options.equals(other.options));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * #%L
+ * Wisdom-Framework
+ * %%
+ * Copyright (C) 2015 Wisdom Framework
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.wisdom.jongo.bridge;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.util.JSON;
+import com.mongodb.util.JSONParseException;
+import org.bson.types.ObjectId;
+import org.jongo.Mapper;
+
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * A query template parsed once, using {@code #} as parameter placeholders (Jongo syntax). Binding the parameters
+ * copies the parsed tree and replaces the placeholders, no query string is parsed.
+ */
+class QueryTemplate {
+
+    /**
+     * The key of the objects marking the placeholders in the parsed tree.
+     */
+    private static final String PARAMETER = "$wisdom-jongo-parameter";
+
+    //field wrapping the values marshalled by the mapper
+    private static final String WRAPPED = "value";
+
+    private final String query;
+    private final DBObject tree;
+    private final int parameterCount;
+
+    private QueryTemplate(String query, DBObject tree, int parameterCount) {
+        this.query = query;
+        this.tree = tree;
+        this.parameterCount = parameterCount;
+    }
+
+    /**
+     * Parses a query template. Placeholders inside string literals are not replaced.
+     *
+     * @param query the query.
+     * @return the parsed template.
+     * @throws IllegalArgumentException if the query cannot be parsed.
+     */
+    static QueryTemplate parse(String query) {
+        StringBuilder json = new StringBuilder(query.length());
+        int count = 0;
+        char quote = 0;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (quote != 0) {
+                json.append(c);
+                if (c == '\\' && i + 1 < query.length()) {
+                    json.append(query.charAt(++i));
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '#') {
+                json.append("{\"").append(PARAMETER).append("\" : ").append(count++).append('}');
+            } else {
+                if (c == '\'' || c == '"') {
+                    quote = c;
+                }
+                json.append(c);
+            }
+        }
+
+        Object parsed;
+        try {
+            parsed = JSON.parse(json.toString());
+        } catch (JSONParseException e) {
+            throw new IllegalArgumentException("Cannot parse query " + query, e);
+        }
+        if (!(parsed instanceof DBObject)) {
+            throw new IllegalArgumentException("The query " + query + " is not a document");
+        }
+        return new QueryTemplate(query, (DBObject) parsed, count);
+    }
+
+    /**
+     * Creates the query with the given parameters.
+     *
+     * @param params the parameters, in the order of the placeholders.
+     * @param mapper the mapper used to marshall parameters that are not BSON values.
+     * @return the query.
+     * @throws IllegalArgumentException if the number of parameters does not match the number of placeholders.
+     */
+    DBObject bind(Object[] params, Mapper mapper) {
+        if (params.length != parameterCount) {
+            throw new IllegalArgumentException("The query " + query + " expects " + parameterCount
+                    + " parameter(s), " + params.length + " given");
+        }
+        Object[] values = new Object[params.length];
+        for (int i = 0; i < params.length; i++) {
+            values[i] = marshall(params[i], mapper);
+        }
+        return (DBObject) copy(tree, values);
+    }
+
+    private static Object copy(Object node, Object[] values) {
+        if (node instanceof BasicDBList) {
+            BasicDBList list = new BasicDBList();
+            for (Object item : (BasicDBList) node) {
+                list.add(copy(item, values));
+            }
+            return list;
+        }
+        if (node instanceof DBObject) {
+            DBObject object = (DBObject) node;
+            if (object.containsField(PARAMETER) && object.keySet().size() == 1) {
+                return values[((Number) object.get(PARAMETER)).intValue()];
+            }
+            BasicDBObject copy = new BasicDBObject();
+            for (String key : object.keySet()) {
+                copy.put(key, copy(object.get(key), values));
+            }
+            return copy;
+        }
+        // Immutable leaf
+        return node;
+    }
+
+    /**
+     * Converts a value to a BSON value. Values encoded natively by the driver are kept, collections, arrays and maps
+     * are converted recursively, other values, including enums and big numbers, are marshalled by the mapper, as
+     * {@code save} does.
+     *
+     * @param param  the value.
+     * @param mapper the mapper.
+     * @return the BSON value.
+     */
+    static Object marshall(Object param, Mapper mapper) {
+        if (param == null || param instanceof String || param instanceof Integer || param instanceof Long
+                || param instanceof Double || param instanceof Float || param instanceof Short
+                || param instanceof Byte || param instanceof Boolean || param instanceof Date
+                || param instanceof ObjectId || param instanceof Pattern || param instanceof UUID
+                || param instanceof byte[] || param instanceof DBObject) {
+            return param;
+        }
+        if (param instanceof Collection) {
+            BasicDBList list = new BasicDBList();
+            for (Object item : (Collection) param) {
+                list.add(marshall(item, mapper));
+            }
+            return list;
+        }
+        if (param.getClass().isArray()) {
+            BasicDBList list = new BasicDBList();
+            for (int i = 0; i < Array.getLength(param); i++) {
+                list.add(marshall(Array.get(param, i), mapper));
+            }
+            return list;
+        }
+        if (param instanceof Map) {
+            BasicDBObject object = new BasicDBObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) param).entrySet()) {
+                object.put(String.valueOf(entry.getKey()), marshall(entry.getValue(), mapper));
+            }
+            return object;
+        }
+        // the mapper only marshalls documents, the value is wrapped so scalars are supported
+        return mapper.getMarshaller().marshall(Collections.singletonMap(WRAPPED, param)).toDBObject().get(WRAPPED);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * #%L
+ * Wisdom-Framework
+ * %%
+ * Copyright (C) 2015 Wisdom Framework
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.wisdom.jongo.bridge;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.mongodb.DBObject;
+import org.jongo.Mapper;
+
+/**
+ * A bounded cache of parsed query templates, keyed by the query string. The cache is shared by all the Jongo Crud
+ * services, so executing a {@link org.wisdom.jongo.service.MongoFilter} only binds the parameters once the shape of
+ * the query has been seen.
+ */
+public final class QueryTemplateCache {
+
+    /**
+     * The maximum number of templates kept by the shared cache.
+     */
+    public static final int DEFAULT_MAXIMUM_SIZE = 512;
+
+    private static final QueryTemplateCache SHARED = new QueryTemplateCache(DEFAULT_MAXIMUM_SIZE);
+
+    private final LoadingCache<String, QueryTemplate> templates;
+
+    QueryTemplateCache(int maximumSize) {
+        templates = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build(new CacheLoader<String, QueryTemplate>() {
+                    @Override
+                    public QueryTemplate load(String query) {
+                        return QueryTemplate.parse(query);
+                    }
+                });
+    }
+
+    /**
+     * @return the cache shared by all the Crud services.
+     */
+    public static QueryTemplateCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Creates the query from the (cached) template and the given parameters.
+     *
+     * @param query  the query template, using {@code #} as parameter placeholders.
+     * @param params the parameters.
+     * @param mapper the mapper used to marshall the parameters.
+     * @return the query.
+     * @throws IllegalArgumentException if the query cannot be parsed, or the parameters do not match.
+     */
+    DBObject bind(String query, Object[] params, Mapper mapper) {
+        QueryTemplate template;
+        try {
+            template = templates.getUnchecked(query);
+        } catch (UncheckedExecutionException e) {
+            if (e.getCause() instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) e.getCause();
+            }
+            throw e;
+        }
+        return template.bind(params == null ? new Object[0] : params, mapper);
+    }
+
+    /**
+     * @return the number of executions that found their template in the cache.
+     */
+    public long getHitCount() {
+        return templates.stats().hitCount();
+    }
+
+    /**
+     * @return the number of executions that had to parse their template.
+     */
+    public long getMissCount() {
+        return templates.stats().missCount();
+    }
+
+    /**
+     * @return the number of templates currently cached.
+     */
+    public long size() {
+        return templates.size();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * #%L
+ * Wisdom-Framework
+ * %%
+ * Copyright (C) 2015 Wisdom Framework
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.wisdom.jongo.service;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import org.wisdom.api.model.EntityFilter;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Asynchronous variant of {@link JongoCRUD}, registered alongside each Crud service. Operations are executed on a
+ * bounded executor shared by the entities of the database, so the calling thread is not blocked by the driver.
+ * Futures can be combined with {@link com.google.common.util.concurrent.Futures}, for instance to fan out several
+ * lookups. When the executor queue is full, the returned future fails with a
+ * {@link java.util.concurrent.RejectedExecutionException}.
+ *
+ * @param <T> the entity class.
+ * @param <K> the type of the id.
+ */
+public interface AsyncJongoCRUD<T, K extends Serializable> {
+
+    /**
+     * @return the synchronous Crud service executing the operations.
+     */
+    public JongoCRUD<T, K> getCrud();
+
+    /**
+     * @return the entity class.
+     */
+    public Class<T> getEntityClass();
+
+    /**
+     * @return the class of the id.
+     */
+    public Class<K> getIdClass();
+
+    /**
+     * Saves an entity, see {@link JongoCRUD#save(Object)}.
+     *
+     * @param entity the entity.
+     * @return the saved entity, with its id.
+     */
+    public ListenableFuture<T> save(T entity);
+
+    /**
+     * Saves entities using bulk writes, see {@link JongoCRUD#saveAll(Iterable)}.
+     *
+     * @param entities the entities.
+     * @return the written entities and the failures.
+     */
+    public ListenableFuture<BatchResult<T>> saveAll(Iterable<T> entities);
+
+    /**
+     * Upserts entities using bulk writes, see {@link JongoCRUD#upsertAll(Iterable, boolean, String...)}.
+     *
+     * @param entities  the entities.
+     * @param ordered   whether the upserts are executed in order, stopping at the first failure.
+     * @param keyFields the fields identifying the entity replaced by an entity.
+     * @return the written entities and the failures.
+     */
+    public ListenableFuture<BatchResult<T>> upsertAll(Iterable<T> entities, boolean ordered, String... keyFields);
+
+    /**
+     * Finds an entity by id, see {@link JongoCRUD#findOne(Serializable)}.
+     *
+     * @param id the id.
+     * @return the entity, {@code null} if not found.
+     */
+    public ListenableFuture<T> findOne(K id);
+
+    /**
+     * Finds an entity matching a filter, see {@link JongoCRUD#findOne(EntityFilter)}.
+     *
+     * @param filter the filter.
+     * @return the entity, {@code null} if none matches.
+     */
+    public ListenableFuture<T> findOne(EntityFilter<T> filter);
+
+    /**
+     * Finds entities by id, see {@link JongoCRUD#findAll(Iterable)}.
+     *
+     * @param ids the ids.
+     * @return the entities, in the order of the ids.
+     */
+    public ListenableFuture<List<T>> findAll(Iterable<K> ids);
+
+    /**
+     * Finds the entities matching a filter, see {@link JongoCRUD#findAll(EntityFilter)}. All the entities are
+     * retrieved before the future completes.
+     *
+     * @param filter the filter.
+     * @return the entities.
+     */
+    public ListenableFuture<List<T>> findAll(EntityFilter<T> filter);
+
+    /**
+     * Checks whether an entity exists, see {@link JongoCRUD#exists(Serializable)}.
+     *
+     * @param id the id.
+     * @return whether the entity exists.
+     */
+    public ListenableFuture<Boolean> exists(K id);
+
+    /**
+     * Counts the entities, see {@link JongoCRUD#count()}.
+     *
+     * @return the number of entities.
+     */
+    public ListenableFuture<Long> count();
+
+    /**
+     * Counts the entities matching a filter, see {@link JongoCRUD#count(EntityFilter)}.
+     *
+     * @param filter the filter.
+     * @return the number of matching entities.
+     */
+    public ListenableFuture<Long> count(EntityFilter<T> filter);
+
+    /**
+     * Deletes an entity by id, see {@link JongoCRUD#delete(Serializable)}.
+     *
+     * @param id the id.
+     * @return a future completed once the entity is deleted, failed if there is no entity with this id.
+     */
+    public ListenableFuture<Void> delete(K id);
+
+    /**
+     * Deletes entities by id, see {@link JongoCRUD#deleteAll(Iterable)}.
+     *
+     * @param ids the ids.
+     * @return the number of deleted entities.
+     */
+    public ListenableFuture<Long> deleteAll(Iterable<K> ids);
+}
@@ -0,0 +1,110 @@
+/*
+ * #%L
+ * Wisdom-Framework
+ * %%
+ * Copyright (C) 2015 Wisdom Framework
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.wisdom.jongo.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a batched write. Entities that were written and entities that failed are reported separately, so
+ * a failing document does not abort the rest of the batch.
+ *
+ * @param <T> the entity class.
+ */
+public class BatchResult<T> {
+
+    private final List<T> written = new ArrayList<>();
+    private final List<Failure<T>> failures = new ArrayList<>();
+
+    /**
+     * Records an entity that has been written successfully.
+     *
+     * @param entity the entity.
+     */
+    public void addWritten(T entity) {
+        written.add(entity);
+    }
+
+    /**
+     * Records an entity that could not be written.
+     *
+     * @param entity  the entity.
+     * @param message the reason of the failure.
+     */
+    public void addFailure(T entity, String message) {
+        failures.add(new Failure<>(entity, message));
+    }
+
+    /**
+     * @return the written entities, in the order they were submitted.
+     */
+    public List<T> getWritten() {
+        return Collections.unmodifiableList(written);
+    }
+
+    /**
+     * @return the entities that could not be written, with the reason of the failure.
+     */
+    public List<Failure<T>> getFailures() {
+        return Collections.unmodifiableList(failures);
+    }
+
+    /**
+     * @return {@code true} if at least one entity could not be written.
+     */
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{written=" + written.size() + ", failures=" + failures + "}";
+    }
+
+    /**
+     * A document that could not be written.
+     *
+     * @param <T> the entity class.
+     */
+    public static class Failure<T> {
+
+        private final T entity;
+        private final String message;
+
+        public Failure(T entity, String message) {
+            this.entity = entity;
+            this.message = message;
+        }
+
+        public T getEntity() {
+            return entity;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return entity + " : " + message;
+        }
+    }
+}
@@ -19,13 +19,230 @@
  */
 package org.wisdom.jongo.service;
 
+import org.reactivestreams.Publisher;
 import org.wisdom.api.model.Crud;
+import org.wisdom.api.model.EntityFilter;
 
 import java.io.Serializable;
+import java.util.Map;
 
 public interface JongoCRUD<T,K extends Serializable> extends Crud<T,K> {
 
     public void deleteAllFromCollection();
 
+    /**
+     * Saves the given entities in chunks, each chunk being sent to the database as a single bulk write. Entities
+     * without id are inserted, the others are upserted by id. A failing document does not abort the batch, it is
+     * reported in the returned result.
+     *
+     * @param entities the entities to save.
+     * @return the written entities and the failures.
+     */
+    public BatchResult<T> saveAll(Iterable<T> entities);
+
+    /**
+     * Deletes the entities having the given ids, using bulk removes. Unlike {@link #delete(Serializable)}, missing ids are
+     * not reported by an exception, compare the returned count with the number of ids to detect them.
+     *
+     * @param ids the ids of the entities to delete.
+     * @return the number of documents actually removed.
+     */
+    public long deleteAll(Iterable<K> ids);
+
+    /**
+     * Finds the entities matching the given filter. Filters that cannot be evaluated by the database are evaluated
+     * in parallel, batch by batch, and must therefore be thread-safe. Use this method for CPU-intensive filters.
+     *
+     * @param filter  the filter.
+     * @param ordered {@code true} to get the entities in cursor order, {@code false} to get them as soon as they
+     *                are available.
+     * @return the matching entities.
+     */
+    public Iterable<T> findAllInParallel(EntityFilter<T> filter, boolean ordered);
+
+    /**
+     * Finds an entity by id, retrieving only the given fields.
+     *
+     * @param id     the id.
+     * @param type   the class the document is mapped to, either the entity class or a lightweight class declaring
+     *               a subset of its fields.
+     * @param fields the fields to retrieve.
+     * @param <P>    the type of the result.
+     * @return the result, {@code null} if not found.
+     */
+    public <P> P findOne(K id, Class<P> type, String... fields);
+
+    /**
+     * Finds an entity matching the given filter, retrieving only the given fields. The filter must be evaluated by
+     * the database ({@link MongoFilter} or {@link QueryFilter}).
+     *
+     * @param filter the filter.
+     * @param type   the class the document is mapped to, either the entity class or a lightweight class declaring
+     *               a subset of its fields.
+     * @param fields the fields to retrieve.
+     * @param <P>    the type of the result.
+     * @return the result, {@code null} if not found.
+     */
+    public <P> P findOne(EntityFilter<T> filter, Class<P> type, String... fields);
+
+    /**
+     * Finds the entities matching the given filter, retrieving only the given fields. The filter must be evaluated by
+     * the database ({@link MongoFilter} or {@link QueryFilter}).
+     *
+     * @param filter the filter.
+     * @param type   the class the documents are mapped to, either the entity class or a lightweight class
+     *               declaring a subset of its fields.
+     * @param fields the fields to retrieve.
+     * @param <P>    the type of the results.
+     * @return the results.
+     */
+    public <P> Iterable<P> findAll(EntityFilter<T> filter, Class<P> type, String... fields);
+
+    /**
+     * Counts the entities matching the given filter. Filters evaluated by the database ({@link MongoFilter} or
+     * {@link QueryFilter}) are counted on the server.
+     *
+     * @param filter the filter.
+     * @return the number of matching entities.
+     */
+    public long count(EntityFilter<T> filter);
+
+    /**
+     * Counts the entities of the collection on the server, even if {@link #count()} is served from a cache.
+     *
+     * @return the number of entities.
+     */
+    public long exactCount();
+
+    /**
+     * Estimates the number of entities of the collection from the collection metadata, without counting them. This
+     * is much faster than {@link #count()} on large collections, but the result may be slightly off.
+     *
+     * @return the estimated number of entities.
+     */
+    public long estimatedCount();
+
+    /**
+     * Updates some fields of the entity having the given id, without loading nor rewriting the whole entity. Fields
+     * mapped to {@code null} are removed.
+     *
+     * @param id     the id of the entity.
+     * @param fields the new values of the fields, by name.
+     * @throws IllegalArgumentException if there is no entity with this id.
+     */
+    public void update(K id, Map<String, ?> fields);
+
+    /**
+     * Updates the entity having the given id using a Mongo update document, such as {@code {$set: {name: #}}}.
+     *
+     * @param id     the id of the entity.
+     * @param update the update document, using {@code #} as placeholder for the parameters.
+     * @param params the parameters.
+     * @throws IllegalArgumentException if there is no entity with this id.
+     */
+    public void update(K id, String update, Object... params);
+
+    /**
+     * Atomically increments a numeric field of the entity having the given id.
+     *
+     * @param id    the id of the entity.
+     * @param field the field.
+     * @param delta the increment, negative to decrement.
+     * @throws IllegalArgumentException if there is no entity with this id.
+     */
+    public void increment(K id, String field, Number delta);
+
+    /**
+     * Atomically appends a value to an array field of the entity having the given id.
+     *
+     * @param id    the id of the entity.
+     * @param field the array field.
+     * @param value the value.
+     * @throws IllegalArgumentException if there is no entity with this id.
+     */
+    public void push(K id, String field, Object value);
+
+    /**
+     * Atomically appends a value to an array field of the entity having the given id, unless already present.
+     *
+     * @param id    the id of the entity.
+     * @param field the array field.
+     * @param value the value.
+     * @throws IllegalArgumentException if there is no entity with this id.
+     */
+    public void addToSet(K id, String field, Object value);
+
+    /**
+     * Atomically removes a value from an array field of the entity having the given id.
+     *
+     * @param id    the id of the entity.
+     * @param field the array field.
+     * @param value the value.
+     * @throws IllegalArgumentException if there is no entity with this id.
+     */
+    public void pull(K id, String field, Object value);
+
+    /**
+     * Atomically updates the entity having the given id using a Mongo update document, and returns it once
+     * modified.
+     *
+     * @param id     the id of the entity.
+     * @param update the update document, using {@code #} as placeholder for the parameters.
+     * @param params the parameters.
+     * @return the modified entity, {@code null} if there is no entity with this id.
+     */
+    public T findAndModify(K id, String update, Object... params);
+
+    /**
+     * Replaces the entity matching the filter, or inserts the entity if none matches.
+     *
+     * @param filter the filter selecting the entity to replace, evaluated by the database.
+     * @param entity the entity.
+     * @return the entity, with its id.
+     */
+    public T upsert(EntityFilter<T> filter, T entity);
+
+    /**
+     * Replaces or inserts many entities using bulk writes. Each entity replaces the entity having the same values
+     * for the key fields, or is inserted if there is none.
+     *
+     * @param entities  the entities.
+     * @param ordered   whether the upserts are executed in order, stopping at the first failure.
+     * @param keyFields the fields identifying the entity replaced by an entity.
+     * @return the written entities and the failures.
+     */
+    public BatchResult<T> upsertAll(Iterable<T> entities, boolean ordered, String... keyFields);
+
+    /**
+     * Publishes all the entities of the collection. The entities are read from the database as the subscriber
+     * requests them, and cancelling the subscription releases the server cursor.
+     *
+     * @return the publisher.
+     */
+    public Publisher<T> publishAll();
+
+    /**
+     * Publishes the entities matching a filter, read from the database as the subscriber requests them.
+     *
+     * @param filter the filter.
+     * @return the publisher.
+     */
+    public Publisher<T> publishAll(EntityFilter<T> filter);
+
+    /**
+     * Finds a page of the entities matching a filter, sorted by a field then by id. Pages are chained using the token
+     * of the previous page, so retrieving the next page is an index seek after the last entity of the previous page
+     * instead of skipping the entities of all the previous pages. An index on the sort field and the id, such as
+     * {@code {date : 1, _id : 1}}, keeps every page as fast as the first one. The filter must be evaluated by the
+     * database ({@link MongoFilter} or {@link QueryFilter}).
+     *
+     * @param filter    the filter, use an empty {@link QueryFilter} to page through the whole collection.
+     * @param sortField the sort field, using the dot notation for nested fields, {@code null} to sort by id only.
+     * @param ascending whether the entities are sorted in ascending order.
+     * @param pageSize  the maximum number of entities of the page.
+     * @param token     the token of the previous page, {@code null} to retrieve the first page.
+     * @return the page.
+     */
+    public Page<T> findPage(EntityFilter<T> filter, String sortField, boolean ascending, int pageSize, String token);
 
 }
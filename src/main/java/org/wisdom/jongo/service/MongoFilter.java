@@ -28,15 +28,44 @@ public class MongoFilter<T> implements EntityFilter<T> {
 
     private final String filter;
     private final Object[] params;
+    private final String projection;
+    private final QueryOptions options;
 
     public MongoFilter(final String filter) {
-        this.filter = filter;
-        this.params = new Object[0];
+        this(filter, new Object[0]);
     }
 
     public MongoFilter(final String filter, final Object... params) {
+        this(filter, params, null, null);
+    }
+
+    private MongoFilter(final String filter, final Object[] params, final String projection,
+                        final QueryOptions options) {
         this.filter = filter;
         this.params = params;
+        this.projection = projection;
+        this.options = options;
+    }
+
+    /**
+     * Creates a copy of this filter retrieving only some fields of the documents. The other fields of the returned
+     * entities are left to their default value.
+     *
+     * @param projection the projection, such as {@code {name : 1, age : 1}}.
+     * @return the new filter.
+     */
+    public MongoFilter<T> withProjection(final String projection) {
+        return new MongoFilter<>(filter, params, projection, options);
+    }
+
+    /**
+     * Creates a copy of this filter using the given cursor options.
+     *
+     * @param options the options, {@code null} for the default cursor settings.
+     * @return the new filter.
+     */
+    public MongoFilter<T> withOptions(final QueryOptions options) {
+        return new MongoFilter<>(filter, params, projection, options);
     }
 
     @Override
@@ -52,4 +81,18 @@ public class MongoFilter<T> implements EntityFilter<T> {
     public Object[] getParams() {
         return params;
     }
+
+    /**
+     * @return the projection, {@code null} to retrieve all the fields.
+     */
+    public String getProjection() {
+        return projection;
+    }
+
+    /**
+     * @return the cursor options, {@code null} for the default cursor settings.
+     */
+    public QueryOptions getOptions() {
+        return options;
+    }
 }
@@ -0,0 +1,73 @@
+/*
+ * #%L
+ * Wisdom-Framework
+ * %%
+ * Copyright (C) 2015 Wisdom Framework
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.wisdom.jongo.service;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of entities retrieved by
+ * {@link JongoCRUD#findPage(org.wisdom.api.model.EntityFilter, String, boolean, int, String)}, with the token
+ * continuing the iteration after its last entity.
+ *
+ * @param <T> the entity class.
+ */
+public class Page<T> {
+
+    private final List<T> entities;
+    private final String nextToken;
+
+    /**
+     * Creates a page.
+     *
+     * @param entities  the entities of the page.
+     * @param nextToken the token of the next page, {@code null} if this page is the last one.
+     */
+    public Page(List<T> entities, String nextToken) {
+        this.entities = Collections.unmodifiableList(entities);
+        this.nextToken = nextToken;
+    }
+
+    /**
+     * @return the entities of the page, in the sort order.
+     */
+    public List<T> getEntities() {
+        return entities;
+    }
+
+    /**
+     * @return the opaque token retrieving the next page, {@code null} if this page is the last one.
+     */
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    /**
+     * @return {@code true} if more entities follow this page.
+     */
+    public boolean hasNext() {
+        return nextToken != null;
+    }
+
+    @Override
+    public String toString() {
+        return "Page{entities=" + entities.size() + ", hasNext=" + hasNext() + "}";
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * #%L
+ * Wisdom-Framework
+ * %%
+ * Copyright (C) 2015 Wisdom Framework
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.wisdom.jongo.service;
+
+import org.wisdom.api.model.EntityFilter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A typed {@link EntityFilter} builder compiled to a MongoDB query, so the filter is evaluated by the database
+ * instead of scanning the collection. Criteria added to the same filter are combined with {@code $and}:
+ * <pre>
+ * new QueryFilter&lt;Panda&gt;().eq("name", "Paul").between("age", 2, 10).exists("mother")
+ * </pre>
+ *
+ * @param <T> the entity class.
+ */
+public class QueryFilter<T> implements EntityFilter<T> {
+
+    private final List<String> clauses = new ArrayList<>();
+    private final List<Object> params = new ArrayList<>();
+    private QueryOptions options;
+
+    /**
+     * Selects the entities whose field is equal to the given value.
+     *
+     * @param field the field name, dotted notation is supported.
+     * @param value the value.
+     * @return the current filter.
+     */
+    public QueryFilter<T> eq(String field, Object value) {
+        return add(field, "#", value);
+    }
+
+    /**
+     * Selects the entities whose field is not equal to the given value.
+     *
+     * @param field the field name, dotted notation is supported.
+     * @param value the value.
+     * @return the current filter.
+     */
+    public QueryFilter<T> ne(String field, Object value) {
+        return add(field, "{$ne : #}", value);
+    }
+
+    /**
+     * Selects the entities whose field is equal to one of the given values.
+     *
+     * @param field  the field name, dotted notation is supported.
+     * @param values the values.
+     * @return the current filter.
+     */
+    public QueryFilter<T> in(String field, Collection<?> values) {
+        return add(field, "{$in : #}", new ArrayList<>(values));
+    }
+
+    /**
+     * Selects the entities whose field is equal to one of the given values.
+     *
+     * @param field  the field name, dotted notation is supported.
+     * @param values the values.
+     * @return the current filter.
+     */
+    public QueryFilter<T> in(String field, Object... values) {
+        return in(field, Arrays.asList(values));
+    }
+
+    /**
+     * Selects the entities whose field is strictly greater than the given value.
+     *
+     * @param field the field name, dotted notation is supported.
+     * @param value the lower bound (excluded).
+     * @return the current filter.
+     */
+    public QueryFilter<T> gt(String field, Object value) {
+        return add(field, "{$gt : #}", value);
+    }
+
+    /**
+     * Selects the entities whose field is greater than or equal to the given value.
+     *
+     * @param field the field name, dotted notation is supported.
+     * @param value the lower bound (included).
+     * @return the current filter.
+     */
+    public QueryFilter<T> gte(String field, Object value) {
+        return add(field, "{$gte : #}", value);
+    }
+
+    /**
+     * Selects the entities whose field is strictly lower than the given value.
+     *
+     * @param field the field name, dotted notation is supported.
+     * @param value the upper bound (excluded).
+     * @return the current filter.
+     */
+    public QueryFilter<T> lt(String field, Object value) {
+        return add(field, "{$lt : #}", value);
+    }
+
+    /**
+     * Selects the entities whose field is lower than or equal to the given value.
+     *
+     * @param field the field name, dotted notation is supported.
+     * @param value the upper bound (included).
+     * @return the current filter.
+     */
+    public QueryFilter<T> lte(String field, Object value) {
+        return add(field, "{$lte : #}", value);
+    }
+
+    /**
+     * Selects the entities whose field is in the range {@code [from, to[}.
+     *
+     * @param field the field name, dotted notation is supported.
+     * @param from  the lower bound (included).
+     * @param to    the upper bound (excluded).
+     * @return the current filter.
+     */
+    public QueryFilter<T> between(String field, Object from, Object to) {
+        return add(field, "{$gte : #, $lt : #}", from, to);
+    }
+
+    /**
+     * Selects the entities having the given field, even if its value is {@code null}.
+     *
+     * @param field the field name, dotted notation is supported.
+     * @return the current filter.
+     */
+    public QueryFilter<T> exists(String field) {
+        return exists(field, true);
+    }
+
+    /**
+     * Selects the entities having (or not having) the given field.
+     *
+     * @param field  the field name, dotted notation is supported.
+     * @param exists whether the field must be present or absent.
+     * @return the current filter.
+     */
+    public QueryFilter<T> exists(String field, boolean exists) {
+        return add(field, "{$exists : #}", exists);
+    }
+
+    /**
+     * Selects the entities whose field matches the given regular expression. Prefer anchored expressions
+     * ({@code ^prefix}) as they can use an index.
+     *
+     * @param field   the field name, dotted notation is supported.
+     * @param pattern the regular expression.
+     * @return the current filter.
+     */
+    public QueryFilter<T> regex(String field, String pattern) {
+        return add(field, "{$regex : #}", pattern);
+    }
+
+    /**
+     * Selects the entities whose field matches the given regular expression.
+     *
+     * @param field   the field name, dotted notation is supported.
+     * @param pattern the regular expression.
+     * @param options the regular expression options, such as {@code i} for case insensitivity.
+     * @return the current filter.
+     */
+    public QueryFilter<T> regex(String field, String pattern, String options) {
+        return add(field, "{$regex : #, $options : #}", pattern, options);
+    }
+
+    /**
+     * Selects the entities matching all the given filters.
+     *
+     * @param filters the filters.
+     * @return the current filter.
+     */
+    @SafeVarargs
+    public final QueryFilter<T> and(QueryFilter<T>... filters) {
+        return combine("$and", filters);
+    }
+
+    /**
+     * Selects the entities matching at least one of the given filters.
+     *
+     * @param filters the filters.
+     * @return the current filter.
+     */
+    @SafeVarargs
+    public final QueryFilter<T> or(QueryFilter<T>... filters) {
+        return combine("$or", filters);
+    }
+
+    private QueryFilter<T> combine(String operator, QueryFilter<T>[] filters) {
+        if (filters.length == 0) {
+            throw new IllegalArgumentException("At least one filter is required for " + operator);
+        }
+        StringBuilder clause = new StringBuilder("{").append(operator).append(" : [");
+        for (int i = 0; i < filters.length; i++) {
+            if (i > 0) {
+                clause.append(", ");
+            }
+            clause.append(filters[i].getQuery());
+            params.addAll(filters[i].params);
+        }
+        clauses.add(clause.append("]}").toString());
+        return this;
+    }
+
+    private QueryFilter<T> add(String field, String condition, Object... values) {
+        // field names may come from user input, they must not inject operators or escape the quoted name
+        if (field == null || field.isEmpty() || field.startsWith("$") || field.indexOf('"') != -1
+                || field.indexOf('#') != -1 || field.indexOf('\\') != -1 || field.indexOf('\0') != -1) {
+            throw new IllegalArgumentException("Invalid field name '" + field + "'");
+        }
+        clauses.add("{\"" + field + "\" : " + condition + "}");
+        Collections.addAll(params, values);
+        return this;
+    }
+
+    /**
+     * @return the query template, using {@code #} as parameter placeholders.
+     */
+    public String getQuery() {
+        if (clauses.isEmpty()) {
+            return "{}";
+        }
+        if (clauses.size() == 1) {
+            return clauses.get(0);
+        }
+        StringBuilder query = new StringBuilder("{$and : [");
+        for (int i = 0; i < clauses.size(); i++) {
+            if (i > 0) {
+                query.append(", ");
+            }
+            query.append(clauses.get(i));
+        }
+        return query.append("]}").toString();
+    }
+
+    /**
+     * @return the parameters, in the order of their placeholders in the query template.
+     */
+    public Object[] getParams() {
+        return params.toArray();
+    }
+
+    /**
+     * Sets the cursor options (sort, limit, skip...) applied when the filter is executed.
+     *
+     * @param options the options, {@code null} for the default cursor settings.
+     * @return the current filter.
+     */
+    public QueryFilter<T> options(QueryOptions options) {
+        this.options = options;
+        return this;
+    }
+
+    /**
+     * Compiles the current filter to a {@link MongoFilter}.
+     *
+     * @return the Mongo filter.
+     */
+    public MongoFilter<T> toMongoFilter() {
+        return new MongoFilter<>(getQuery(), getParams()).withOptions(options);
+    }
+
+    @Override
+    public boolean accept(T t) {
+        // Do nothing on purpose - the filter is applied directly on the DB layer.
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return getQuery() + " " + params;
+    }
+}
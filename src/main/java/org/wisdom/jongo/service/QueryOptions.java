@@ -0,0 +1,194 @@
+/*
+ * #%L
+ * Wisdom-Framework
+ * %%
+ * Copyright (C) 2015 Wisdom Framework
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.wisdom.jongo.service;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cursor options of a {@link MongoFilter}: batch size, limit, skip, sort, index hint and server-side time limit.
+ * Options are immutable, each method returns a copy:
+ * <pre>
+ * new MongoFilter&lt;Panda&gt;("{age : {$gt : #}}", 10)
+ *     .withOptions(new QueryOptions().sort("{age : -1}").limit(100).maxTime(2, TimeUnit.SECONDS));
+ * </pre>
+ */
+public final class QueryOptions {
+
+    private final int batchSize;
+    private final int limit;
+    private final int skip;
+    private final String sort;
+    private final String hint;
+    private final long maxTimeMillis;
+
+    /**
+     * Creates options leaving all the cursor settings to their default.
+     */
+    public QueryOptions() {
+        this(0, 0, 0, null, null, 0);
+    }
+
+    private QueryOptions(int batchSize, int limit, int skip, String sort, String hint, long maxTimeMillis) {
+        this.batchSize = batchSize;
+        this.limit = limit;
+        this.skip = skip;
+        this.sort = sort;
+        this.hint = hint;
+        this.maxTimeMillis = maxTimeMillis;
+    }
+
+    /**
+     * @param batchSize the number of documents per cursor batch, 0 for the server default.
+     * @return the new options.
+     */
+    public QueryOptions batchSize(int batchSize) {
+        checkPositive("batch size", batchSize);
+        return new QueryOptions(batchSize, limit, skip, sort, hint, maxTimeMillis);
+    }
+
+    /**
+     * @param limit the maximum number of returned documents, 0 for no limit.
+     * @return the new options.
+     */
+    public QueryOptions limit(int limit) {
+        checkPositive("limit", limit);
+        return new QueryOptions(batchSize, limit, skip, sort, hint, maxTimeMillis);
+    }
+
+    /**
+     * @param skip the number of documents to skip.
+     * @return the new options.
+     */
+    public QueryOptions skip(int skip) {
+        checkPositive("skip", skip);
+        return new QueryOptions(batchSize, limit, skip, sort, hint, maxTimeMillis);
+    }
+
+    /**
+     * @param sort the sort, such as {@code {age : -1, name : 1}}.
+     * @return the new options.
+     */
+    public QueryOptions sort(String sort) {
+        return new QueryOptions(batchSize, limit, skip, sort, hint, maxTimeMillis);
+    }
+
+    /**
+     * @param hint the index to use, given by its key pattern, such as {@code {age : 1}}.
+     * @return the new options.
+     */
+    public QueryOptions hint(String hint) {
+        return new QueryOptions(batchSize, limit, skip, sort, hint, maxTimeMillis);
+    }
+
+    /**
+     * Sets the time limit of the query on the server. Queries exceeding it fail with a
+     * {@code com.mongodb.MongoExecutionTimeoutException}. The server counts in milliseconds, so the limit is rounded
+     * up to the next millisecond: a positive limit never means 'no limit'.
+     *
+     * @param maxTime the time limit, 0 for no limit.
+     * @param unit    the unit of the time limit.
+     * @return the new options.
+     */
+    public QueryOptions maxTime(long maxTime, TimeUnit unit) {
+        checkPositive("max time", maxTime);
+        long millis = unit.toMillis(maxTime);
+        if (millis < Long.MAX_VALUE && unit.convert(millis, TimeUnit.MILLISECONDS) < maxTime) {
+            millis++;
+        }
+        return new QueryOptions(batchSize, limit, skip, sort, hint, millis);
+    }
+
+    private static void checkPositive(String name, long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("The " + name + " must be positive, " + value + " given");
+        }
+    }
+
+    /**
+     * @return the number of documents per cursor batch, 0 for the server default.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return the maximum number of returned documents, 0 for no limit.
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the number of skipped documents.
+     */
+    public int getSkip() {
+        return skip;
+    }
+
+    /**
+     * @return the sort, {@code null} for the natural order.
+     */
+    public String getSort() {
+        return sort;
+    }
+
+    /**
+     * @return the index hint, {@code null} to let the server choose.
+     */
+    public String getHint() {
+        return hint;
+    }
+
+    /**
+     * @return the time limit of the query in milliseconds, 0 for no limit.
+     */
+    public long getMaxTimeMillis() {
+        return maxTimeMillis;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof QueryOptions)) {
+            return false;
+        }
+        QueryOptions other = (QueryOptions) o;
+        return batchSize == other.batchSize && limit == other.limit && skip == other.skip
+                && maxTimeMillis == other.maxTimeMillis && equal(sort, other.sort) && equal(hint, other.hint);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(new Object[] {batchSize, limit, skip, sort, hint, maxTimeMillis});
+    }
+
+    @Override
+    public String toString() {
+        return "{batchSize: " + batchSize + ", limit: " + limit + ", skip: " + skip + ", sort: " + sort + ", hint: "
+                + hint + ", maxTimeMS: " + maxTimeMillis + "}";
+    }
+}
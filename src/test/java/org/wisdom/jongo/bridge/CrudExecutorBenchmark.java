@@ -0,0 +1,170 @@
+/*
+ * #%L
+ * Wisdom-Framework
+ * %%
+ * Copyright (C) 2015 Wisdom Framework
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.wisdom.jongo.bridge;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of the {@link CrudExecutor} modes for bursts of 1k to 10k concurrent requests. Each request
+ * blocks inside a monitor, as the driver does while it holds a connection:
+ * <ul>
+ * <li>{@code monitor}: sleeps 1ms while holding one of {@value #CONNECTIONS} monitors, modelling a round trip on a
+ * pool of {@value #CONNECTIONS} connections.</li>
+ * <li>{@code driver}: reads a document from an embedded mongod.</li>
+ * </ul>
+ * {@code concurrency} is the number of threads of the pool mode, and the number of permits of the virtual mode. With
+ * 1000 permits, more virtual threads than connections contend on the monitors. The virtual mode requires a JVM
+ * supporting virtual threads. Not a unit test, run it with:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.wisdom.jongo.bridge.CrudExecutorBenchmark
+ * </pre>
+ * Results of an equivalent standalone harness (monitor work, median requests per second) on JDK 21, one core:
+ * <pre>
+ * requests concurrency  POOL       VIRTUAL    VIRTUAL, parallelism=100
+ * 1000     100          60004/s    856/s      18718/s
+ * 1000     1000         38540/s    871/s      21128/s
+ * 10000    100          79614/s    879/s      55639/s
+ * 10000    1000         53412/s    878/s      22206/s
+ * </pre>
+ * Before Java 24, a virtual thread sleeping or doing I/O inside a monitor pins its carrier, so the virtual mode is
+ * bounded by the number of carriers unless {@code -Djdk.virtualThreadScheduler.parallelism} is raised. With enough
+ * carriers, bounding the permits to the connections keeps the virtual threads parked on the semaphore instead of
+ * pinned on the monitors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CrudExecutorBenchmark {
+
+    private static final int CONNECTIONS = 100;
+
+    @Param({"POOL", "VIRTUAL"})
+    private CrudExecutor.Mode mode;
+
+    @Param({"1000", "10000"})
+    private int requests;
+
+    @Param({"100", "1000"})
+    private int concurrency;
+
+    @Param({"monitor", "driver"})
+    private String work;
+
+    private CrudExecutor executor;
+
+    private final Object[] connections = new Object[CONNECTIONS];
+
+    private DBCollection collection;
+
+    @Setup
+    public void setup() throws IOException {
+        for (int i = 0; i < CONNECTIONS; i++) {
+            connections[i] = new Object();
+        }
+        if ("driver".equals(work)) {
+            JongoBaseTest.startMongo();
+            collection = JongoBaseTest.createClient().getDB("Benchmark").getCollection("requests");
+            collection.insert(new BasicDBObject("_id", 1).append("name", "Paul"));
+        }
+        if (mode == CrudExecutor.Mode.VIRTUAL) {
+            executor = CrudExecutor.virtual(concurrency, requests);
+            if (executor == null) {
+                throw new IllegalStateException("Virtual threads are not supported by this JVM");
+            }
+        } else {
+            executor = new CrudExecutor("benchmark", concurrency, requests);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+        if (collection != null) {
+            collection.drop();
+            JongoBaseTest.stopMongo();
+        }
+    }
+
+    private Callable<Object> request(final int index) {
+        if (collection != null) {
+            return new Callable<Object>() {
+                @Override
+                public Object call() {
+                    return collection.findOne(new BasicDBObject("_id", 1));
+                }
+            };
+        }
+        return new Callable<Object>() {
+            @Override
+            public Object call() throws InterruptedException {
+                synchronized (connections[index % CONNECTIONS]) {
+                    Thread.sleep(1);
+                }
+                return this;
+            }
+        };
+    }
+
+    /**
+     * Submits a burst of requests and waits for all of them. The throughput is in bursts per second.
+     *
+     * @return the results.
+     * @throws Exception if a request failed.
+     */
+    @Benchmark
+    public List<Object> burst() throws Exception {
+        List<ListenableFuture<Object>> futures = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            futures.add(executor.submit(request(i)));
+        }
+        return Futures.allAsList(futures).get();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CrudExecutorBenchmark.class.getSimpleName()).build()).run();
+    }
+}
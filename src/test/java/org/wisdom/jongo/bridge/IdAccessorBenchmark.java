@@ -0,0 +1,129 @@
+/*
+ * #%L
+ * Wisdom-Framework
+ * %%
+ * Copyright (C) 2015 Wisdom Framework
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package org.wisdom.jongo.bridge;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.wisdom.jongo.entities.PandaUsingManualLongId2;
+import org.wisdom.jongo.entities.PandaUsingManualStringId3;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the reflective access to the id field, as previously done by {@code JongoCRUDService.getEntityId}, with
+ * the {@link IdAccessor}, and with a method handle held in a static final field, the only form the JIT folds into a
+ * direct field read. Not a unit test, run it with:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.wisdom.jongo.bridge.IdAccessorBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdAccessorBenchmark {
+
+    private static final MethodHandle CONSTANT_LONG_GETTER;
+
+    static {
+        try {
+            Field field = PandaUsingManualLongId2.class.getDeclaredField("key");
+            field.setAccessible(true);
+            CONSTANT_LONG_GETTER = MethodHandles.lookup().unreflectGetter(field)
+                    .asType(MethodType.methodType(Object.class, Object.class));
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private PandaUsingManualLongId2 longPanda;
+    private PandaUsingManualStringId3 stringPanda;
+
+    private Field longField;
+    private Field stringField;
+    private IdAccessor longAccessor;
+    private IdAccessor stringAccessor;
+
+    @Setup
+    public void setup() throws NoSuchFieldException {
+        longPanda = new PandaUsingManualLongId2(23, "Paul");
+        longPanda.setKey(42L);
+        stringPanda = new PandaUsingManualStringId3(23, "Paul");
+        stringPanda.setKey("panda");
+
+        longField = PandaUsingManualLongId2.class.getDeclaredField("key");
+        stringField = PandaUsingManualStringId3.class.getDeclaredField("key");
+        longAccessor = IdAccessor.of(longField);
+        stringAccessor = IdAccessor.of(stringField);
+    }
+
+    private static Object reflect(Field field, Object entity) throws IllegalAccessException {
+        if (!field.isAccessible()) {
+            field.setAccessible(true);
+        }
+        return field.get(entity);
+    }
+
+    @Benchmark
+    public Object reflectionLongId() throws IllegalAccessException {
+        return reflect(longField, longPanda);
+    }
+
+    @Benchmark
+    public Object accessorLongId() {
+        return longAccessor.get(longPanda);
+    }
+
+    @Benchmark
+    public Object constantHandleLongId() throws Throwable {
+        return (Object) CONSTANT_LONG_GETTER.invokeExact((Object) longPanda);
+    }
+
+    @Benchmark
+    public Object reflectionStringId() throws IllegalAccessException {
+        return reflect(stringField, stringPanda);
+    }
+
+    @Benchmark
+    public Object accessorStringId() {
+        return stringAccessor.get(stringPanda);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(IdAccessorBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -20,12 +20,17 @@
 
 package org.wisdom.jongo.bridge;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import org.bson.types.ObjectId;
 import org.junit.Before;
 import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.wisdom.api.model.EntityFilter;
 import org.wisdom.jongo.entities.PandaUsingAutoObjectIdAndId5;
 import org.wisdom.jongo.service.JongoCRUD;
+import org.wisdom.jongo.service.QueryFilter;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -42,6 +47,96 @@ public class JongoCRUDServiceWithEntityUsingAutoObjectIdAndIdTest extends JongoB
         jc.deleteAllFromCollection();
     }
 
+    @Test
+    public void testPublishAllFollowsTheDemand() throws Exception {
+        JongoCRUDService<PandaUsingAutoObjectIdAndId5, String> jc =
+                new JongoCRUDService<>(PandaUsingAutoObjectIdAndId5.class, db());
+        jc.setBatchSize(2);
+        for (int i = 0; i < 5; i++) {
+            jc.save(new PandaUsingAutoObjectIdAndId5(i, "Paul" + i));
+        }
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        jc.publishAll().subscribe(subscriber);
+        assertThat(subscriber.received).isEmpty();
+        subscriber.subscription.request(3);
+        assertThat(subscriber.received).hasSize(3);
+        assertThat(subscriber.completed).isFalse();
+        subscriber.subscription.request(10);
+        assertThat(subscriber.received).hasSize(5);
+        assertThat(subscriber.completed).isTrue();
+
+        subscriber = new RecordingSubscriber();
+        jc.publishAll(new QueryFilter<PandaUsingAutoObjectIdAndId5>().gte("age", 1)).subscribe(subscriber);
+        subscriber.subscription.request(2);
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(2);
+        assertThat(subscriber.received).hasSize(2);
+        assertThat(subscriber.completed).isFalse();
+
+        subscriber = new RecordingSubscriber();
+        jc.publishAll(new EntityFilter<PandaUsingAutoObjectIdAndId5>() {
+            @Override
+            public boolean accept(PandaUsingAutoObjectIdAndId5 panda) {
+                return panda.age % 2 == 0;
+            }
+        }).subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        assertThat(subscriber.received).hasSize(3);
+        assertThat(subscriber.completed).isTrue();
+
+        subscriber = new RecordingSubscriber();
+        jc.publishAll().subscribe(subscriber);
+        subscriber.subscription.request(0);
+        assertThat(subscriber.error).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static class RecordingSubscriber implements Subscriber<PandaUsingAutoObjectIdAndId5> {
+        private final List<PandaUsingAutoObjectIdAndId5> received = new ArrayList<>();
+        private Subscription subscription;
+        private boolean completed;
+        private Throwable error;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(PandaUsingAutoObjectIdAndId5 panda) {
+            received.add(panda);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    @Test
+    public void testDeleteIterableInSeveralChunks() throws Exception {
+        JongoCRUDService<PandaUsingAutoObjectIdAndId5, String> jc =
+                new JongoCRUDService<>(PandaUsingAutoObjectIdAndId5.class, db());
+        jc.setBatchSize(2);
+        List<PandaUsingAutoObjectIdAndId5> list = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            list.add(jc.save(new PandaUsingAutoObjectIdAndId5(i, "Paul" + i)));
+        }
+        PandaUsingAutoObjectIdAndId5 kept = jc.save(new PandaUsingAutoObjectIdAndId5(5, "Pam"));
+
+        jc.delete(list);
+        assertThat(jc.count()).isEqualTo(1);
+        assertThat(jc.exists(kept.getKey())).isTrue();
+        assertThat(jc.deleteAll(ImmutableList.of(kept.getKey(), new ObjectId().toString(), "not-an-oid")))
+                .isEqualTo(1);
+        assertThat(jc.count()).isEqualTo(0);
+    }
+
     @Test
     public void testGetEntityClass() throws Exception {
         JongoCRUDService<PandaUsingAutoObjectIdAndId5, String> jc =
@@ -20,11 +20,16 @@
 package org.wisdom.jongo.bridge;
 
 import com.google.common.collect.Iterables;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
 import org.bson.types.ObjectId;
 import org.junit.Before;
 import org.junit.Test;
 import org.wisdom.jongo.entities.PandaUsingAutoObjectId6;
+import org.wisdom.jongo.service.BatchResult;
 import org.wisdom.jongo.service.JongoCRUD;
+import org.wisdom.jongo.service.MongoFilter;
+import org.wisdom.jongo.service.QueryFilter;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -43,6 +48,63 @@ public class JongoCRUDServiceWithEntityUsingAutoObjectIdTest extends JongoBaseTe
         jc.deleteAllFromCollection();
     }
 
+    @Test
+    public void testUpsert() throws Exception {
+        JongoCRUD<PandaUsingAutoObjectId6, ObjectId> jc = new JongoCRUDService<>(PandaUsingAutoObjectId6.class, db());
+        PandaUsingAutoObjectId6 inserted = jc.upsert(new QueryFilter<PandaUsingAutoObjectId6>().eq("age", 1),
+                new PandaUsingAutoObjectId6(1, "Paul"));
+        assertThat(inserted.id()).isNotNull();
+
+        PandaUsingAutoObjectId6 replaced = jc.upsert(new QueryFilter<PandaUsingAutoObjectId6>().eq("age", 1),
+                new PandaUsingAutoObjectId6(1, "Pierre"));
+        assertThat(replaced.id()).isEqualTo(inserted.id());
+        assertThat(jc.count()).isEqualTo(1);
+        assertThat(jc.count(new MongoFilter<PandaUsingAutoObjectId6>("{name : 'Pierre'}"))).isEqualTo(1);
+    }
+
+    @Test
+    public void testUpsertAll() throws Exception {
+        JongoCRUDService<PandaUsingAutoObjectId6, ObjectId> jc =
+                new JongoCRUDService<>(PandaUsingAutoObjectId6.class, db());
+        jc.setBatchSize(2);
+        jc.save(new PandaUsingAutoObjectId6(1, "Paul"));
+        List<PandaUsingAutoObjectId6> list = new ArrayList<>();
+        list.add(new PandaUsingAutoObjectId6(1, "Paula"));
+        list.add(new PandaUsingAutoObjectId6(2, "Pierre"));
+        list.add(new PandaUsingAutoObjectId6(3, "Paulette"));
+
+        BatchResult<PandaUsingAutoObjectId6> result = jc.upsertAll(list, false, "age");
+        assertThat(result.hasFailures()).isFalse();
+        assertThat(result.getWritten()).hasSize(3);
+        assertThat(jc.count()).isEqualTo(3);
+        assertThat(jc.count(new MongoFilter<PandaUsingAutoObjectId6>("{name : 'Paula'}"))).isEqualTo(1);
+        assertThat(list.get(2).id()).isNotNull();
+
+        DBCollection collection = db().getCollection(PandaUsingAutoObjectId6.class.getSimpleName());
+        collection.createIndex(new BasicDBObject("name", 1), new BasicDBObject("unique", true));
+        try {
+            list = new ArrayList<>();
+            list.add(new PandaUsingAutoObjectId6(4, "Pierre"));
+            list.add(new PandaUsingAutoObjectId6(5, "Pablo"));
+            list.add(new PandaUsingAutoObjectId6(6, "Pedro"));
+
+            // Ordered upserts stop at the first failure
+            result = jc.upsertAll(list, true, "age");
+            assertThat(result.getWritten()).isEmpty();
+            assertThat(result.getFailures()).hasSize(3);
+            assertThat(result.getFailures().get(0).getEntity()).isSameAs(list.get(0));
+            assertThat(jc.count()).isEqualTo(3);
+
+            // Unordered upserts do not
+            result = jc.upsertAll(list, false, "age");
+            assertThat(result.getWritten()).hasSize(2);
+            assertThat(result.getFailures()).hasSize(1);
+            assertThat(jc.count()).isEqualTo(5);
+        } finally {
+            collection.dropIndex(new BasicDBObject("name", 1));
+        }
+    }
+
     @Test
     public void testGetEntityClass() throws Exception {
         JongoCRUDService<PandaUsingAutoObjectId6, ObjectId> jc = new JongoCRUDService<>(PandaUsingAutoObjectId6.class, db());
@@ -221,6 +283,45 @@ public class JongoCRUDServiceWithEntityUsingAutoObjectIdTest extends JongoBaseTe
         assertThat(list).containsExactlyElementsOf(it2);
     }
 
+    @Test
+    public void testSaveAllInSeveralChunks() throws Exception {
+        JongoCRUDService<PandaUsingAutoObjectId6, ObjectId> jc =
+                new JongoCRUDService<>(PandaUsingAutoObjectId6.class, db());
+        jc.setBatchSize(2);
+        List<PandaUsingAutoObjectId6> list = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            list.add(new PandaUsingAutoObjectId6(i, "Paul" + i));
+        }
+        PandaUsingAutoObjectId6 existing = jc.save(new PandaUsingAutoObjectId6(30, "Pam"));
+        existing.age = 31;
+        list.add(existing);
+
+        BatchResult<PandaUsingAutoObjectId6> result = jc.saveAll(list);
+        assertThat(result.hasFailures()).isFalse();
+        assertThat(result.getWritten()).containsExactlyElementsOf(list);
+        for (PandaUsingAutoObjectId6 panda : list) {
+            assertThat(panda.id()).isNotNull();
+        }
+        assertThat(jc.count()).isEqualTo(6);
+        assertThat(jc.findOne(existing.id()).age).isEqualTo(31);
+    }
+
+    @Test
+    public void testSaveSubClassWithoutCopyConstructor() throws Exception {
+        JongoCRUD<PandaUsingAutoObjectId6, ObjectId> jc = new JongoCRUDService<>(PandaUsingAutoObjectId6.class, db());
+        for (int i = 0; i < 2; i++) {
+            try {
+                jc.save(new PandaUsingAutoObjectId6(23, "Paul") {
+                    // Anonymous sub-class
+                });
+                fail("Runtime Exception expected");
+            } catch (RuntimeException e) {
+                assertThat(e.getMessage()).contains("no 'copy' constructor");
+            }
+        }
+        assertThat(jc.count()).isEqualTo(0);
+    }
+
     @Test
     public void testCountItemsInCollection() throws Exception {
         JongoCRUD<PandaUsingAutoObjectId6, ObjectId> jc = new JongoCRUDService<>(PandaUsingAutoObjectId6.class, db());
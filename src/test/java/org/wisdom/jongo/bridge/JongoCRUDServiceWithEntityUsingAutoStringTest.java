@@ -20,18 +20,29 @@
 package org.wisdom.jongo.bridge;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.mongodb.BasicDBObject;
 import org.assertj.core.api.Assertions;
 import org.bson.types.ObjectId;
 import org.junit.Before;
 import org.junit.Test;
 import org.wisdom.api.model.EntityFilter;
+import org.wisdom.jongo.entities.PandaName;
 import org.wisdom.jongo.entities.PandaUsingAutoString4;
 import org.wisdom.jongo.service.JongoCRUD;
 import org.wisdom.jongo.service.MongoFilter;
+import org.wisdom.jongo.service.QueryFilter;
 
+import java.io.Closeable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Fail.fail;
@@ -175,6 +186,366 @@ public class JongoCRUDServiceWithEntityUsingAutoStringTest extends JongoBaseTest
         assertThat(Iterables.size(selected)).isEqualTo(1);
     }
 
+    @Test
+    public void testFindAllByIdsKeepsTheOrderOfTheIds() throws Exception {
+        JongoCRUDService<PandaUsingAutoString4, String> jc = new JongoCRUDService<>(PandaUsingAutoString4.class, db());
+        jc.setBatchSize(2);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ids.add(0, jc.save(new PandaUsingAutoString4(i, "Paul-" + i)).id());
+        }
+
+        List<String> found = new ArrayList<>();
+        for (PandaUsingAutoString4 panda : jc.findAll(ids)) {
+            found.add(panda.id());
+        }
+        assertThat(found).containsExactlyElementsOf(ids);
+    }
+
+    @Test
+    public void testFindWithQueryFilter() throws Exception {
+        JongoCRUD<PandaUsingAutoString4, String> jc = new JongoCRUDService<>(PandaUsingAutoString4.class, db());
+        for (int i = 0; i < 5; i++) {
+            jc.save(new PandaUsingAutoString4(i, "Paul-" + i));
+        }
+        jc.save(new PandaUsingAutoString4(10, null));
+
+        assertThat(Iterables.size(jc.findAll(new QueryFilter<PandaUsingAutoString4>().eq("name", "Paul-1"))))
+                .isEqualTo(1);
+        assertThat(Iterables.size(jc.findAll(new QueryFilter<PandaUsingAutoString4>().in("age", 1, 3, 10))))
+                .isEqualTo(3);
+        assertThat(Iterables.size(jc.findAll(new QueryFilter<PandaUsingAutoString4>().between("age", 1, 3))))
+                .isEqualTo(2);
+        assertThat(Iterables.size(jc.findAll(new QueryFilter<PandaUsingAutoString4>()
+                .regex("name", "^paul-[0-2]$", "i").gt("age", 0)))).isEqualTo(2);
+        assertThat(Iterables.size(jc.findAll(new QueryFilter<PandaUsingAutoString4>().or(
+                new QueryFilter<PandaUsingAutoString4>().eq("age", 0),
+                new QueryFilter<PandaUsingAutoString4>().gte("age", 4).lt("age", 10))))).isEqualTo(2);
+
+        PandaUsingAutoString4 panda = jc.findOne(new QueryFilter<PandaUsingAutoString4>()
+                .ne("name", "Paul-0").lte("age", 0));
+        assertThat(panda).isNull();
+        panda = jc.findOne(new QueryFilter<PandaUsingAutoString4>().eq("name", null).exists("age"));
+        assertThat(panda.age).isEqualTo(10);
+    }
+
+    @Test
+    public void testFindAllWithJavaFilterIsLazy() throws Exception {
+        JongoCRUDService<PandaUsingAutoString4, String> jc = new JongoCRUDService<>(PandaUsingAutoString4.class, db());
+        jc.setBatchSize(2);
+        for (int i = 0; i < 10; i++) {
+            jc.save(new PandaUsingAutoString4(i, "Paul-" + i));
+        }
+        final List<Integer> evaluated = new ArrayList<>();
+        Iterable<PandaUsingAutoString4> selected = jc.findAll(new EntityFilter<PandaUsingAutoString4>() {
+            @Override
+            public boolean accept(PandaUsingAutoString4 panda) {
+                evaluated.add(panda.age);
+                return panda.age % 2 == 0;
+            }
+        });
+        assertThat(evaluated).isEmpty();
+        assertThat(selected).isInstanceOf(Closeable.class);
+
+        Iterator<PandaUsingAutoString4> iterator = selected.iterator();
+        assertThat(iterator.next().age % 2).isEqualTo(0);
+        assertThat(evaluated.size()).isLessThan(10);
+        ((Closeable) selected).close();
+        assertThat(iterator.hasNext()).isFalse();
+
+        assertThat(Iterables.size(selected)).isEqualTo(5);
+    }
+
+    @Test
+    public void testFindAllInParallel() throws Exception {
+        JongoCRUDService<PandaUsingAutoString4, String> jc = new JongoCRUDService<>(PandaUsingAutoString4.class, db());
+        jc.setBatchSize(7);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        jc.setFilterPool(pool);
+        List<PandaUsingAutoString4> pandas = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            pandas.add(new PandaUsingAutoString4(i, "Paul-" + i));
+        }
+        jc.save(pandas);
+        EntityFilter<PandaUsingAutoString4> even = new EntityFilter<PandaUsingAutoString4>() {
+            @Override
+            public boolean accept(PandaUsingAutoString4 panda) {
+                return panda.age % 2 == 0;
+            }
+        };
+
+        List<Integer> ages = new ArrayList<>();
+        for (PandaUsingAutoString4 panda : jc.findAllInParallel(even, true)) {
+            ages.add(panda.age);
+        }
+        List<Integer> expected = new ArrayList<>();
+        for (PandaUsingAutoString4 panda : jc.findAll(even)) {
+            expected.add(panda.age);
+        }
+        assertThat(ages).hasSize(50).containsExactlyElementsOf(expected);
+
+        ages.clear();
+        for (PandaUsingAutoString4 panda : jc.findAllInParallel(even, false)) {
+            ages.add(panda.age);
+        }
+        assertThat(ages).hasSize(50).containsOnlyElementsOf(expected);
+
+        // A failing filter closes the iteration
+        Iterator<PandaUsingAutoString4> failing = jc.findAllInParallel(new EntityFilter<PandaUsingAutoString4>() {
+            @Override
+            public boolean accept(PandaUsingAutoString4 panda) {
+                throw new IllegalArgumentException("Broken filter");
+            }
+        }, true).iterator();
+        try {
+            failing.hasNext();
+            fail("The failure of the filter must be propagated");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertThat(failing.hasNext()).isFalse();
+        pool.shutdown();
+
+        JongoCRUDService<PandaUsingAutoString4, String> withoutPool =
+                new JongoCRUDService<>(PandaUsingAutoString4.class, db());
+        try {
+            withoutPool.findAllInParallel(even, true);
+            fail("The filter pool is required");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testMongoFilterTemplatesAreCached() throws Exception {
+        JongoCRUDService<PandaUsingAutoString4, String> jc = new JongoCRUDService<>(PandaUsingAutoString4.class, db());
+        for (int i = 0; i < 5; i++) {
+            jc.save(new PandaUsingAutoString4(i, "Paul #" + i));
+        }
+        QueryTemplateCache cache = jc.getQueryTemplateCache();
+        String query = "{name : {$ne : 'Paul #0'}, age : {$in : #}, $or : [{age : {$gt : #}}, {name : #}]}";
+        long misses = cache.getMissCount();
+        long hits = cache.getHitCount();
+
+        assertThat(Iterables.size(jc.findAll(new MongoFilter<PandaUsingAutoString4>(query,
+                ImmutableList.of(0, 1, 2), 1, "Paul #1")))).isEqualTo(2);
+        assertThat(jc.findOne(new MongoFilter<PandaUsingAutoString4>(query,
+                new int[] {3, 4}, 10, "Paul #4")).age).isEqualTo(4);
+
+        assertThat(cache.getMissCount()).isEqualTo(misses + 1);
+        assertThat(cache.getHitCount()).isEqualTo(hits + 1);
+
+        try {
+            jc.findOne(new MongoFilter<PandaUsingAutoString4>(query, 1));
+            fail("Illegal Argument Exception expected");
+        } catch (IllegalArgumentException e) {
+            // OK, the error is expected.
+        }
+    }
+
+    @Test
+    public void testQueryResultCache() throws Exception {
+        JongoCRUDService<PandaUsingAutoString4, String> jc = new JongoCRUDService<>(PandaUsingAutoString4.class, db());
+        JongoCRUDService<PandaUsingAutoString4, String> other =
+                new JongoCRUDService<>(PandaUsingAutoString4.class, db());
+        jc.enableQueryCache(100, 10, 0, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 5; i++) {
+            jc.save(new PandaUsingAutoString4(i, "Paul #" + i));
+        }
+        QueryResultCache cache = jc.getQueryCache();
+        MongoFilter<PandaUsingAutoString4> filter = new MongoFilter<>("{age : {$in : #}}", new int[] {1, 2, 3});
+
+        assertThat(Iterables.size(jc.findAll(filter))).isEqualTo(3);
+        assertThat(Iterables.size(jc.findAll(new MongoFilter<PandaUsingAutoString4>("{age : {$in : #}}",
+                new int[] {1, 2, 3})))).isEqualTo(3);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+
+        // Writes made by another service on the same collection discard the results.
+        other.save(new PandaUsingAutoString4(2, "Paula"));
+        assertThat(Iterables.size(jc.findAll(filter))).isEqualTo(4);
+        assertThat(cache.getMissCount()).isEqualTo(2);
+
+        // Cached entities are not shared.
+        jc.findOne(filter).age = 42;
+        assertThat(jc.findOne(filter).age).isNotEqualTo(42);
+
+        // Large results are not cached.
+        for (int i = 0; i < 10; i++) {
+            jc.save(new PandaUsingAutoString4(i, "Pierre #" + i));
+        }
+        long size = cache.size();
+        Iterable<PandaUsingAutoString4> large = jc.findAll(new MongoFilter<PandaUsingAutoString4>("{}"));
+        assertThat(Iterables.size(large)).isEqualTo(16);
+        assertThat(cache.size()).isEqualTo(size);
+        // The first iteration continues the cursor opened by the cache, the next ones run the query again
+        assertThat(Iterables.size(large)).isEqualTo(16);
+
+        // In max-staleness mode, writes do not discard the results.
+        jc.enableQueryCache(100, 10, 1, TimeUnit.HOURS);
+        cache = jc.getQueryCache();
+        assertThat(Iterables.size(jc.findAll(filter))).isEqualTo(7);
+        jc.save(new PandaUsingAutoString4(3, "Paula"));
+        assertThat(Iterables.size(jc.findAll(filter))).isEqualTo(7);
+        assertThat(cache.getStaleHitCount()).isEqualTo(1);
+
+        // Parameters mutated after the query do not alter the cached key
+        List<Integer> ages = new ArrayList<>(Arrays.asList(0, 1));
+        MongoFilter<PandaUsingAutoString4> byAges = new MongoFilter<>("{age : {$in : #}}", ages);
+        assertThat(Iterables.size(jc.findAll(byAges))).isEqualTo(4);
+        ages.add(4);
+        long hits = cache.getHitCount();
+        assertThat(Iterables.size(jc.findAll(new MongoFilter<PandaUsingAutoString4>("{age : {$in : #}}",
+                Arrays.asList(0, 1))))).isEqualTo(4);
+        assertThat(cache.getHitCount()).isEqualTo(hits + 1);
+    }
+
+    @Test
+    public void testFilterOnEnumParameter() throws Exception {
+        JongoCRUD<PandaUsingAutoString4, String> jc = new JongoCRUDService<>(PandaUsingAutoString4.class, db());
+        PandaUsingAutoString4 panda = new PandaUsingAutoString4(1, "Paul");
+        panda.diet = PandaUsingAutoString4.Diet.BAMBOO;
+        jc.save(panda);
+        PandaUsingAutoString4 other = new PandaUsingAutoString4(2, "Paula");
+        other.diet = PandaUsingAutoString4.Diet.FRUIT;
+        jc.save(other);
+
+        // Enums are marshalled as save stores them, not with toString
+        PandaUsingAutoString4 found = jc.findOne(new MongoFilter<PandaUsingAutoString4>("{diet : #}",
+                PandaUsingAutoString4.Diet.BAMBOO));
+        assertThat(found.getName()).isEqualTo("Paul");
+        assertThat(jc.count(new QueryFilter<PandaUsingAutoString4>().in("diet", PandaUsingAutoString4.Diet.BAMBOO,
+                PandaUsingAutoString4.Diet.FRUIT))).isEqualTo(2);
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        JongoCRUD<PandaUsingAutoString4, String> jc = new JongoCRUDService<>(PandaUsingAutoString4.class, db());
+        String id = jc.save(new PandaUsingAutoString4(1, "Paul")).id();
+
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("age", 7);
+        fields.put("name", null);
+        jc.update(id, fields);
+        PandaUsingAutoString4 panda = jc.findOne(id);
+        assertThat(panda.age).isEqualTo(7);
+        assertThat(panda.getName()).isNull();
+
+        jc.update(id, "{$set : {name : #}, $inc : {age : #}}", "Pierre", 2);
+        panda = jc.findOne(id);
+        assertThat(panda.age).isEqualTo(9);
+        assertThat(panda.getName()).isEqualTo("Pierre");
+
+        try {
+            jc.update(new ObjectId().toString(), fields);
+            fail("Illegal Argument Exception expected");
+        } catch (IllegalArgumentException e) {
+            // OK, the error is expected.
+        }
+
+        // An empty update does not modify the entity, but still requires it to exist
+        jc.update(id, ImmutableMap.<String, Object>of());
+        assertThat(jc.findOne(id).age).isEqualTo(9);
+        try {
+            jc.update(new ObjectId().toString(), ImmutableMap.<String, Object>of());
+            fail("Illegal Argument Exception expected");
+        } catch (IllegalArgumentException e) {
+            // OK, the error is expected.
+        }
+    }
+
+    @Test
+    public void testDirtyTrackingOnlySavesModifiedFields() throws Exception {
+        JongoCRUDService<PandaUsingAutoString4, String> jc = new JongoCRUDService<>(PandaUsingAutoString4.class, db());
+        jc.setDirtyTracking(true);
+        String id = jc.save(new PandaUsingAutoString4(1, "Paul")).id();
+
+        PandaUsingAutoString4 panda = jc.findOne(id);
+        // Modified by another writer in the meantime
+        jc.update(id, ImmutableMap.of("name", "Pierre"));
+        panda.age = 2;
+        jc.save(panda);
+
+        PandaUsingAutoString4 saved = jc.findOne(id);
+        assertThat(saved.age).isEqualTo(2);
+        assertThat(saved.getName()).isEqualTo("Pierre");
+
+        // Saving again a saved entity only writes the new modifications
+        saved.age = 3;
+        jc.save(saved);
+        jc.update(id, ImmutableMap.of("name", "Paula"));
+        jc.save(saved);
+        assertThat(jc.findOne(id).getName()).isEqualTo("Paula");
+        assertThat(jc.findOne(id).age).isEqualTo(3);
+
+        // Without dirty tracking, the whole entity is written
+        jc.setDirtyTracking(false);
+        jc.save(saved);
+        assertThat(jc.findOne(id).getName()).isEqualTo("Pierre");
+
+        // Entities found by filters evaluated in the JVM are tracked too
+        jc.setDirtyTracking(true);
+        panda = jc.findOne(new EntityFilter<PandaUsingAutoString4>() {
+            @Override
+            public boolean accept(PandaUsingAutoString4 candidate) {
+                return candidate.age == 3;
+            }
+        });
+        jc.update(id, ImmutableMap.of("name", "Paulo"));
+        panda.age = 4;
+        jc.save(panda);
+        assertThat(jc.findOne(id).getName()).isEqualTo("Paulo");
+        assertThat(jc.findOne(id).age).isEqualTo(4);
+
+        // Binaries are compared by content
+        BasicDBObject before = new BasicDBObject("photo", new byte[]{1, 2, 3})
+                .append("album", new BasicDBObject("cover", new byte[]{4}));
+        BasicDBObject after = new BasicDBObject("photo", new byte[]{1, 2, 3})
+                .append("album", new BasicDBObject("cover", new byte[]{4}));
+        assertThat(DirtyTracker.diff(before, after).keySet()).isEmpty();
+        after.put("photo", new byte[]{1, 2});
+        assertThat(DirtyTracker.diff(before, after).keySet()).containsExactly("$set");
+    }
+
+    @Test
+    public void testFindWithProjection() throws Exception {
+        JongoCRUD<PandaUsingAutoString4, String> jc = new JongoCRUDService<>(PandaUsingAutoString4.class, db());
+        PandaUsingAutoString4 saved = null;
+        for (int i = 1; i <= 5; i++) {
+            saved = jc.save(new PandaUsingAutoString4(i, "Paul-" + i));
+        }
+
+        PandaUsingAutoString4 panda = jc.findOne(saved.id(), PandaUsingAutoString4.class, "name");
+        assertThat(panda.id()).isEqualTo(saved.id());
+        assertThat(panda.getName()).isEqualTo("Paul-5");
+        assertThat(panda.age).isEqualTo(0);
+
+        panda = jc.findOne(new MongoFilter<PandaUsingAutoString4>("{age : #}", 2).withProjection("{age : 1}"));
+        assertThat(panda.age).isEqualTo(2);
+        assertThat(panda.getName()).isNull();
+
+        List<String> names = new ArrayList<>();
+        for (PandaName name : jc.findAll(new QueryFilter<PandaUsingAutoString4>().gt("age", 3), PandaName.class,
+                "name")) {
+            names.add(name.getName());
+        }
+        assertThat(names).containsOnly("Paul-4", "Paul-5");
+        assertThat(jc.findOne(new QueryFilter<PandaUsingAutoString4>().eq("age", 1), PandaName.class, "name")
+                .getName()).isEqualTo("Paul-1");
+
+        try {
+            jc.findAll(new EntityFilter<PandaUsingAutoString4>() {
+                @Override
+                public boolean accept(PandaUsingAutoString4 panda) {
+                    return true;
+                }
+            }, PandaName.class, "name");
+            fail("Illegal Argument Exception expected");
+        } catch (IllegalArgumentException e) {
+            // OK, the error is expected.
+        }
+    }
+
     @Test
     public void testExists() throws Exception {
         JongoCRUD<PandaUsingAutoString4, String> jc = new JongoCRUDService<>(PandaUsingAutoString4.class, db());
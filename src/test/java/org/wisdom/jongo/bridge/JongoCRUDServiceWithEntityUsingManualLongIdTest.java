@@ -20,13 +20,22 @@
 package org.wisdom.jongo.bridge;
 
 import com.google.common.collect.Iterables;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
 import org.junit.Before;
 import org.junit.Test;
+import org.wisdom.api.model.EntityFilter;
 import org.wisdom.jongo.entities.PandaUsingManualLong1;
+import org.wisdom.jongo.service.BatchResult;
 import org.wisdom.jongo.service.JongoCRUD;
+import org.wisdom.jongo.service.MongoFilter;
+import org.wisdom.jongo.service.Page;
+import org.wisdom.jongo.service.QueryFilter;
+import org.wisdom.jongo.service.QueryOptions;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Fail.fail;
@@ -246,6 +255,200 @@ public class JongoCRUDServiceWithEntityUsingManualLongIdTest extends JongoBaseTe
 
     }
 
+    @Test
+    public void testSaveAllReportsFailuresWithoutAbortingTheBatch() throws Exception {
+        JongoCRUDService<PandaUsingManualLong1, Long> jc = new JongoCRUDService<>(PandaUsingManualLong1.class, db());
+        DBCollection collection = db().getCollection(PandaUsingManualLong1.class.getSimpleName());
+        collection.createIndex(new BasicDBObject("name", 1), new BasicDBObject("unique", true));
+        try {
+            List<PandaUsingManualLong1> list = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                PandaUsingManualLong1 p = new PandaUsingManualLong1(23, i == 2 ? "Paul0" : "Paul" + i);
+                p.setId(500L + i);
+                list.add(p);
+            }
+
+            BatchResult<PandaUsingManualLong1> result = jc.saveAll(list);
+            assertThat(result.getWritten()).hasSize(3);
+            assertThat(result.getFailures()).hasSize(1);
+            assertThat(result.getFailures().get(0).getEntity()).isSameAs(list.get(2));
+            assertThat(jc.count()).isEqualTo(3);
+        } finally {
+            collection.dropIndex(new BasicDBObject("name", 1));
+        }
+    }
+
+    @Test
+    public void testCountWithFilter() throws Exception {
+        JongoCRUD<PandaUsingManualLong1, Long> jc = new JongoCRUDService<>(PandaUsingManualLong1.class, db());
+        for (int i = 0; i < 6; i++) {
+            PandaUsingManualLong1 p = new PandaUsingManualLong1(i, "Paul");
+            p.setId(700L + i);
+            jc.save(p);
+        }
+        assertThat(jc.count(new MongoFilter<PandaUsingManualLong1>("{age : {$gte : #}}", 2))).isEqualTo(4);
+        assertThat(jc.count(new QueryFilter<PandaUsingManualLong1>().lt("age", 2))).isEqualTo(2);
+        assertThat(jc.count(new EntityFilter<PandaUsingManualLong1>() {
+            @Override
+            public boolean accept(PandaUsingManualLong1 panda) {
+                return panda.age % 3 == 0;
+            }
+        })).isEqualTo(2);
+    }
+
+    @Test
+    public void testQueryFilterRejectsUnsafeFieldNames() throws Exception {
+        for (String field : new String[] {"$where", "$expr", "name\\", "na\"me", "age#", "name\0", ""}) {
+            try {
+                new QueryFilter<PandaUsingManualLong1>().eq(field, "Paul");
+                fail("The field name '" + field + "' must be rejected");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+        assertThat(new QueryFilter<PandaUsingManualLong1>().eq("mother.name", "Paula").getQuery())
+                .isEqualTo("{\"mother.name\" : #}");
+    }
+
+    @Test
+    public void testQueryOptions() throws Exception {
+        JongoCRUD<PandaUsingManualLong1, Long> jc = new JongoCRUDService<>(PandaUsingManualLong1.class, db());
+        for (int i = 0; i < 6; i++) {
+            PandaUsingManualLong1 p = new PandaUsingManualLong1(i, "Paul");
+            p.setId(750L + i);
+            jc.save(p);
+        }
+        QueryOptions options = new QueryOptions().sort("{age : -1}").skip(1).limit(3).batchSize(2)
+                .hint("{_id : 1}").maxTime(10, TimeUnit.SECONDS);
+        List<Integer> ages = new ArrayList<>();
+        for (PandaUsingManualLong1 panda : jc.findAll(new QueryFilter<PandaUsingManualLong1>().gte("age", 0)
+                .options(options))) {
+            ages.add(panda.age);
+        }
+        assertThat(ages).containsExactly(4, 3, 2);
+        assertThat(jc.findOne(new MongoFilter<PandaUsingManualLong1>("{}").withOptions(options)).age).isEqualTo(4);
+        assertThat(jc.count(new MongoFilter<PandaUsingManualLong1>("{}").withOptions(options))).isEqualTo(3);
+        assertThat(jc.count(new MongoFilter<PandaUsingManualLong1>("{}")
+                .withOptions(new QueryOptions().skip(4)))).isEqualTo(2);
+
+        try {
+            new QueryOptions().limit(-1);
+            fail("Negative limits must be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        // Sub-millisecond limits are rounded up, not turned into 'no limit'
+        assertThat(new QueryOptions().maxTime(500, TimeUnit.MICROSECONDS).getMaxTimeMillis()).isEqualTo(1);
+        assertThat(new QueryOptions().maxTime(1500, TimeUnit.MICROSECONDS).getMaxTimeMillis()).isEqualTo(2);
+        assertThat(new QueryOptions().maxTime(2, TimeUnit.SECONDS).getMaxTimeMillis()).isEqualTo(2000);
+        assertThat(new QueryOptions().maxTime(0, TimeUnit.NANOSECONDS).getMaxTimeMillis()).isEqualTo(0);
+    }
+
+    @Test
+    public void testFindPage() throws Exception {
+        JongoCRUD<PandaUsingManualLong1, Long> jc = new JongoCRUDService<>(PandaUsingManualLong1.class, db());
+        for (int i = 0; i < 7; i++) {
+            PandaUsingManualLong1 p = new PandaUsingManualLong1(i / 2, "Paul");
+            p.setId(900L + i);
+            jc.save(p);
+        }
+        QueryFilter<PandaUsingManualLong1> all = new QueryFilter<>();
+        List<Long> ids = new ArrayList<>();
+        String token = null;
+        int pages = 0;
+        do {
+            Page<PandaUsingManualLong1> page = jc.findPage(all, "age", false, 3, token);
+            assertThat(page.getEntities().size()).isLessThanOrEqualTo(3);
+            for (PandaUsingManualLong1 panda : page.getEntities()) {
+                ids.add(panda.id());
+            }
+            token = page.getNextToken();
+            pages++;
+        } while (token != null);
+        // Entities having the same age are ordered by id
+        assertThat(ids).containsExactly(906L, 905L, 904L, 903L, 902L, 901L, 900L);
+        assertThat(pages).isEqualTo(3);
+
+        Page<PandaUsingManualLong1> first = jc.findPage(all.gte("age", 1), null, true, 2, null);
+        assertThat(first.getEntities()).hasSize(2);
+        assertThat(first.getEntities().get(0).id()).isEqualTo(902L);
+        Page<PandaUsingManualLong1> second = jc.findPage(all, null, true, 2, first.getNextToken());
+        assertThat(second.getEntities().get(0).id()).isEqualTo(904L);
+
+        try {
+            jc.findPage(all, "age", true, 2, first.getNextToken());
+            fail("A token must only be used with the sort it was created for");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testFindPageWithMissingAndMixedSortValues() throws Exception {
+        JongoCRUDService<PandaUsingManualLong1, Long> jc = new JongoCRUDService<>(PandaUsingManualLong1.class, db());
+        String[] names = {null, null, "b", "a", "c"};
+        for (int i = 0; i < names.length; i++) {
+            PandaUsingManualLong1 p = new PandaUsingManualLong1(i, names[i]);
+            p.setId(920L + i);
+            jc.save(p);
+        }
+        DBCollection collection = db().getCollection(PandaUsingManualLong1.class.getSimpleName());
+        collection.insert(new BasicDBObject("_id", 926L).append("age", 5).append("name", 7));
+        collection.insert(new BasicDBObject("_id", 927L).append("age", 6));
+
+        // Null and missing values sort first, then numbers, then strings
+        assertThat(pageIds(jc, true)).containsExactly(920L, 921L, 927L, 926L, 923L, 922L, 924L);
+        assertThat(pageIds(jc, false)).containsExactly(924L, 922L, 923L, 926L, 927L, 921L, 920L);
+    }
+
+    private static List<Long> pageIds(JongoCRUD<PandaUsingManualLong1, Long> jc, boolean ascending) {
+        List<Long> ids = new ArrayList<>();
+        String token = null;
+        do {
+            Page<PandaUsingManualLong1> page = jc.findPage(new QueryFilter<PandaUsingManualLong1>(), "name",
+                    ascending, 2, token);
+            for (PandaUsingManualLong1 panda : page.getEntities()) {
+                ids.add(panda.id());
+            }
+            token = page.getNextToken();
+        } while (token != null);
+        return ids;
+    }
+
+    @Test
+    public void testCountCache() throws Exception {
+        JongoCRUDService<PandaUsingManualLong1, Long> jc = new JongoCRUDService<>(PandaUsingManualLong1.class, db());
+        jc.enableCountCache(1, TimeUnit.HOURS);
+        CountCache cache = jc.getCountCache();
+        assertThat(jc.count()).isEqualTo(0);
+
+        PandaUsingManualLong1 p = new PandaUsingManualLong1(1, "Paul");
+        p.setId(800L);
+        jc.save(p);
+        // Replacing an existing document does not change the count
+        jc.save(p);
+        List<PandaUsingManualLong1> pandas = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            PandaUsingManualLong1 panda = new PandaUsingManualLong1(i, "Paula");
+            panda.setId(801L + i);
+            pandas.add(panda);
+        }
+        jc.saveAll(pandas);
+        jc.delete(801L);
+        assertThat(jc.count()).isEqualTo(3);
+        assertThat(cache.getLoadCount()).isEqualTo(1);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+
+        // Writes made by other means are only visible in the exact count
+        PandaUsingManualLong1 other = new PandaUsingManualLong1(5, "Pierre");
+        other.setId(810L);
+        new JongoCRUDService<>(PandaUsingManualLong1.class, db()).save(other);
+        assertThat(jc.count()).isEqualTo(3);
+        assertThat(jc.exactCount()).isEqualTo(4);
+        assertThat(jc.estimatedCount()).isEqualTo(4);
+    }
+
     @Test
     public void testCountItemsInCollection() throws Exception {
         JongoCRUD<PandaUsingManualLong1, Long> jc = new JongoCRUDService<>(PandaUsingManualLong1.class, db());
@@ -19,6 +19,7 @@
  */
 package org.wisdom.jongo.bridge;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import org.junit.Before;
 import org.junit.Test;
@@ -27,6 +28,8 @@ import org.wisdom.jongo.service.JongoCRUD;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Fail.fail;
@@ -39,6 +42,134 @@ public class JongoCRUDServiceWithEntityUsingManualLongKeyTest extends JongoBaseT
         jc.deleteAllFromCollection();
     }
 
+    @Test
+    public void testFindAllByIdsKeepsTheOrderOfTheIds() throws Exception {
+        JongoCRUDService<PandaUsingManualLongId2, Long> jc = new JongoCRUDService<>(PandaUsingManualLongId2.class, db());
+        jc.setBatchSize(2);
+        for (int i = 0; i < 5; i++) {
+            PandaUsingManualLongId2 p = new PandaUsingManualLongId2(i, "Paul" + i);
+            p.setKey(100L + i);
+            jc.save(p);
+        }
+
+        List<Long> ids = ImmutableList.of(104L, 100L, 103L, 101L, 104L);
+        List<Long> keys = new ArrayList<>();
+        for (PandaUsingManualLongId2 panda : jc.findAll(ids)) {
+            keys.add(panda.getKey());
+        }
+        assertThat(keys).containsExactlyElementsOf(ids);
+
+        try {
+            jc.findAll(ImmutableList.of(100L, 1234L));
+            fail("Illegal Argument Exception expected");
+        } catch (IllegalArgumentException e) {
+            // OK, the error is expected.
+        }
+    }
+
+    @Test
+    public void testEntityCache() throws Exception {
+        JongoCRUDService<PandaUsingManualLongId2, Long> jc = new JongoCRUDService<>(PandaUsingManualLongId2.class, db());
+        jc.enableCache(100, 1, TimeUnit.HOURS);
+        EntityCache cache = jc.getEntityCache();
+        for (int i = 0; i < 3; i++) {
+            PandaUsingManualLongId2 p = new PandaUsingManualLongId2(i, "Paul" + i);
+            p.setKey(200L + i);
+            jc.save(p);
+        }
+
+        assertThat(jc.findOne(200L).age).isEqualTo(0);
+        assertThat(cache.getLoadCount()).isEqualTo(1);
+        PandaUsingManualLongId2 cached = jc.findOne(200L);
+        assertThat(cached.age).isEqualTo(0);
+        assertThat(cache.getStats().hitCount()).isEqualTo(1);
+
+        // Modifying the returned entity does not modify the cache
+        cached.age = 42;
+        assertThat(jc.findOne(200L).age).isEqualTo(0);
+
+        // findAll only loads the missing ids
+        assertThat(Iterables.size(jc.findAll(ImmutableList.of(200L, 201L, 202L)))).isEqualTo(3);
+        assertThat(cache.getLoadCount()).isEqualTo(3);
+        assertThat(cache.size()).isEqualTo(3);
+
+        // Writes invalidate the cache
+        jc.save(cached);
+        assertThat(jc.findOne(200L).age).isEqualTo(42);
+        jc.delete(201L);
+        assertThat(jc.findOne(201L)).isNull();
+        jc.deleteAllFromCollection();
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(jc.findOne(202L)).isNull();
+    }
+
+    @Test
+    public void testMissingIdCache() throws Exception {
+        JongoCRUDService<PandaUsingManualLongId2, Long> jc = new JongoCRUDService<>(PandaUsingManualLongId2.class, db());
+        PandaUsingManualLongId2 p = new PandaUsingManualLongId2(1, "Paul");
+        p.setKey(300L);
+        jc.save(p);
+        jc.enableMissingIdCache(100, 1, TimeUnit.HOURS);
+        MissingIdCache cache = jc.getMissingIdCache();
+
+        assertThat(jc.exists(301L)).isFalse();
+        assertThat(jc.findOne(301L)).isNull();
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(jc.exists(300L)).isTrue();
+
+        // Saving the id clears the negative entry
+        PandaUsingManualLongId2 p2 = new PandaUsingManualLongId2(2, "Paula");
+        p2.setKey(301L);
+        jc.save(p2);
+        assertThat(jc.exists(301L)).isTrue();
+        assertThat(jc.findOne(301L).age).isEqualTo(2);
+
+        // The Bloom filter answers ids never looked up
+        jc.enableMissingIdBloomFilter(0.001);
+        assertThat(jc.findOne(302L)).isNull();
+        assertThat(cache.getBloomFilterHitCount()).isEqualTo(1);
+        assertThat(jc.findOne(300L)).isNotNull();
+        assertThat(jc.exists(301L)).isTrue();
+        PandaUsingManualLongId2 p3 = new PandaUsingManualLongId2(3, "Pierre");
+        p3.setKey(302L);
+        jc.save(p3);
+        assertThat(jc.exists(302L)).isTrue();
+    }
+
+    @Test
+    public void testMissingIdBloomFilterIsBuiltInTheBackgroundAndExpires() throws Exception {
+        JongoCRUDService<PandaUsingManualLongId2, Long> jc = new JongoCRUDService<>(PandaUsingManualLongId2.class, db());
+        PandaUsingManualLongId2 p = new PandaUsingManualLongId2(1, "Paul");
+        p.setKey(310L);
+        jc.save(p);
+        jc.enableMissingIdCache(100, 1, TimeUnit.HOURS);
+        MissingIdCache cache = jc.getMissingIdCache();
+        final List<Runnable> builds = new ArrayList<>();
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                builds.add(command);
+            }
+        };
+
+        // Lookups are answered by the database until the filter is built
+        jc.enableMissingIdBloomFilter(0.001, 50, TimeUnit.MILLISECONDS, executor);
+        assertThat(builds).hasSize(1);
+        assertThat(jc.exists(311L)).isFalse();
+        assertThat(cache.getBloomFilterHitCount()).isEqualTo(0);
+        builds.get(0).run();
+        assertThat(jc.exists(312L)).isFalse();
+        assertThat(cache.getBloomFilterHitCount()).isEqualTo(1);
+
+        // A document inserted by another writer is found once the filter has expired
+        PandaUsingManualLongId2 other = new PandaUsingManualLongId2(2, "Pierre");
+        other.setKey(313L);
+        new JongoCRUDService<>(PandaUsingManualLongId2.class, db()).save(other);
+        Thread.sleep(100);
+        assertThat(jc.exists(313L)).isTrue();
+        assertThat(builds).hasSize(2);
+    }
+
     @Test
     public void testGetEntityClass() throws Exception {
         JongoCRUDService<PandaUsingManualLongId2, Long> jc = new JongoCRUDService<>(PandaUsingManualLongId2.class, db());
@@ -20,14 +20,24 @@
 package org.wisdom.jongo.bridge;
 
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.bson.types.ObjectId;
 import org.junit.Before;
 import org.junit.Test;
 import org.wisdom.jongo.entities.PandaUsingManualStringId3;
+import org.wisdom.jongo.service.AsyncJongoCRUD;
 import org.wisdom.jongo.service.JongoCRUD;
+import org.wisdom.jongo.service.QueryFilter;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Fail.fail;
@@ -39,6 +49,188 @@ public class JongoCRUDServiceWithEntityUsingManualStringKeyTest extends JongoBas
         jc.deleteAllFromCollection();
     }
 
+    @Test
+    public void testDeleteAllByIds() throws Exception {
+        JongoCRUDService<PandaUsingManualStringId3, String> jc = new JongoCRUDService<>(PandaUsingManualStringId3.class, db());
+        jc.setBatchSize(2);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            PandaUsingManualStringId3 p = new PandaUsingManualStringId3(i, "Paul" + i);
+            p.setKey("panda-" + i);
+            jc.save(p);
+            ids.add(p.getKey());
+        }
+        ids.remove("panda-4");
+        ids.add("missing");
+
+        assertThat(jc.deleteAll(ids)).isEqualTo(4);
+        assertThat(jc.count()).isEqualTo(1);
+        assertThat(jc.exists("panda-4")).isTrue();
+    }
+
+    @Test
+    public void testAtomicOperators() throws Exception {
+        JongoCRUD<PandaUsingManualStringId3, String> jc = new JongoCRUDService<>(PandaUsingManualStringId3.class, db());
+        PandaUsingManualStringId3 p = new PandaUsingManualStringId3(1, "Paul");
+        p.setKey("panda");
+        jc.save(p);
+
+        jc.increment("panda", "age", 2);
+        jc.increment("panda", "age", -1);
+        jc.push("panda", "friends", "Pierre");
+        jc.push("panda", "friends", "Paula");
+        jc.addToSet("panda", "friends", "Pierre");
+        jc.addToSet("panda", "friends", "Paulette");
+        jc.pull("panda", "friends", "Paula");
+        PandaUsingManualStringId3 panda = jc.findOne("panda");
+        assertThat(panda.age).isEqualTo(2);
+        assertThat(panda.friends).containsExactly("Pierre", "Paulette");
+
+        panda = jc.findAndModify("panda", "{$inc : {age : #}, $push : {friends : #}}", 10, "Paula");
+        assertThat(panda.age).isEqualTo(12);
+        assertThat(panda.friends).containsExactly("Pierre", "Paulette", "Paula");
+        assertThat(jc.findAndModify("missing", "{$inc : {age : 1}}")).isNull();
+
+        try {
+            jc.increment("missing", "age", 1);
+            fail("Illegal Argument Exception expected");
+        } catch (IllegalArgumentException e) {
+            // OK, the error is expected.
+        }
+    }
+
+    @Test
+    public void testAsyncCrud() throws Exception {
+        CrudExecutor executor = new CrudExecutor("test", 2, 10);
+        try {
+            AsyncJongoCRUD<PandaUsingManualStringId3, String> async = new AsyncJongoCRUDService<>(
+                    new JongoCRUDService<>(PandaUsingManualStringId3.class, db()), executor);
+            List<ListenableFuture<PandaUsingManualStringId3>> saved = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                PandaUsingManualStringId3 p = new PandaUsingManualStringId3(i, "Paul" + i);
+                p.setKey("async-" + i);
+                saved.add(async.save(p));
+            }
+            assertThat(Futures.allAsList(saved).get()).hasSize(5);
+
+            List<PandaUsingManualStringId3> found = Futures.allAsList(async.findOne("async-1"),
+                    async.findOne("async-3")).get();
+            assertThat(found.get(0).age).isEqualTo(1);
+            assertThat(found.get(1).age).isEqualTo(3);
+            assertThat(async.count().get()).isEqualTo(5);
+            assertThat(async.exists("missing").get()).isFalse();
+            assertThat(async.findAll(new QueryFilter<PandaUsingManualStringId3>().gte("age", 2)).get()).hasSize(3);
+
+            try {
+                async.delete("missing").get();
+                fail("Execution Exception expected");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(IllegalArgumentException.class);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testAsyncCrudRejectsOperationsWhenTheQueueIsFull() throws Exception {
+        CrudExecutor executor = new CrudExecutor("test", 1, 1);
+        final CountDownLatch latch = new CountDownLatch(1);
+        try {
+            Callable<Void> blocking = new Callable<Void>() {
+                @Override
+                public Void call() throws InterruptedException {
+                    latch.await();
+                    return null;
+                }
+            };
+            ListenableFuture<Void> running = executor.submit(blocking);
+            ListenableFuture<Void> queued = executor.submit(blocking);
+            ListenableFuture<Void> rejected = executor.submit(blocking);
+
+            assertThat(rejected.isDone()).isTrue();
+            try {
+                rejected.get();
+                fail("Execution Exception expected");
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(RejectedExecutionException.class);
+            }
+            assertThat(executor.getRejectedCount()).isEqualTo(1);
+            assertThat(executor.getQueueSize()).isEqualTo(1);
+
+            latch.countDown();
+            running.get();
+            queued.get();
+            assertThat(executor.getQueueSize()).isEqualTo(0);
+        } finally {
+            latch.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testAsyncCrudShutdownReleasesQueuedOperations() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        Callable<Void> blocking = new Callable<Void>() {
+            @Override
+            public Void call() throws InterruptedException {
+                latch.await();
+                return null;
+            }
+        };
+        CrudExecutor executor = new CrudExecutor("test", 1, 1);
+        try {
+            executor.submit(blocking);
+            ListenableFuture<Void> queued = executor.submit(blocking);
+            executor.shutdown();
+            assertThat(queued.isDone()).isTrue();
+            try {
+                queued.get(10, TimeUnit.SECONDS);
+                fail("Cancellation Exception expected");
+            } catch (CancellationException e) {
+                // OK, the error is expected.
+            }
+        } finally {
+            latch.countDown();
+        }
+
+        // Tasks waiting for a permit in virtual mode, on JVMs supporting virtual threads
+        CrudExecutor virtual = CrudExecutor.virtual(1, 1);
+        if (virtual == null) {
+            return;
+        }
+        final CountDownLatch blocked = new CountDownLatch(1);
+        virtual.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws InterruptedException {
+                blocked.await();
+                return null;
+            }
+        });
+        ListenableFuture<Void> waiting = virtual.submit(blocking);
+        virtual.shutdown();
+        try {
+            waiting.get(10, TimeUnit.SECONDS);
+            fail("Execution Exception expected");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(RejectedExecutionException.class);
+        } finally {
+            blocked.countDown();
+        }
+    }
+
+    @Test
+    public void testIdsContainingQuotes() throws Exception {
+        JongoCRUD<PandaUsingManualStringId3, String> jc = new JongoCRUDService<>(PandaUsingManualStringId3.class, db());
+        PandaUsingManualStringId3 p = new PandaUsingManualStringId3(23, "Paul");
+        p.setKey("it's a 'panda' \"key\"");
+        jc.save(p);
+        assertThat(jc.findOne(p.getKey()).getKey()).isEqualTo(p.getKey());
+        assertThat(jc.exists("' || '1' == '1")).isFalse();
+        jc.delete(p.getKey());
+        assertThat(jc.count()).isEqualTo(0);
+    }
+
     @Test
     public void testGetEntityClass() throws Exception {
         JongoCRUDService<PandaUsingManualStringId3, String> jc = new JongoCRUDService<>(PandaUsingManualStringId3.class, db());
@@ -36,6 +36,19 @@ public class PandaUsingAutoString4 {
 
     public int age;
     String name;
+    public Diet diet;
+
+    /**
+     * An enum whose {@code toString} differs from its name.
+     */
+    public enum Diet {
+        BAMBOO, FRUIT;
+
+        @Override
+        public String toString() {
+            return name().toLowerCase();
+        }
+    }
 
     public PandaUsingAutoString4(int age, String name) {
         this.age = age;
@@ -22,6 +22,9 @@ package org.wisdom.jongo.entities;
 
 import org.jongo.marshall.jackson.oid.Id;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Entity using the case 3 from http://jongo.org
  * public class Friend {
@@ -35,6 +38,7 @@ public class PandaUsingManualStringId3 {
     private String key ;
     public int age;
     String name;
+    public List<String> friends = new ArrayList<>();
 
     public PandaUsingManualStringId3(int age, String name) {
         this.age = age;